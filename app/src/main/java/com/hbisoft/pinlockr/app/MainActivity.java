@@ -8,12 +8,19 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.core.content.ContextCompat;
 
+import com.hbisoft.pinlockr.FilePinStore;
 import com.hbisoft.pinlockr.IndicatorDots;
+import com.hbisoft.pinlockr.PinAttemptTracker;
+import com.hbisoft.pinlockr.PinHasher;
+import com.hbisoft.pinlockr.PinStore;
 import com.hbisoft.pinlockr.PinlockrListener;
 import com.hbisoft.pinlockr.PinlockrView;
 import com.hbisoft.pinlockr.customfonts.MediumFont;
 
+import java.io.File;
+
 
 public class MainActivity extends AppCompatActivity {
     PinlockrView pinLockView;
@@ -22,6 +29,9 @@ public class MainActivity extends AppCompatActivity {
     private static final String PREFS_NAME = "HideITPrefs";
     private static final String KEY_DARK_MODE = "isDarkMode";
     boolean isDarkMode;
+    private PinHasher mPinHasher;
+    private PinStore mPinStore;
+    private PinAttemptTracker mAttemptTracker;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -31,6 +41,12 @@ public class MainActivity extends AppCompatActivity {
         AppCompatDelegate.setDefaultNightMode(isDarkMode ? AppCompatDelegate.MODE_NIGHT_YES : AppCompatDelegate.MODE_NIGHT_NO);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        // The PIN is hashed on a background thread, with a cost calibrated for this device
+        mPinHasher = new PinHasher(new File(getNoBackupFilesDir(), "pinlockr_kdf"));
+        mPinHasher.calibrate(ContextCompat.getMainExecutor(this), null);
+        // Loads the stored pin in the background, so it's in memory before the user is done typing
+        mPinStore = new FilePinStore(this);
+        mAttemptTracker = new PinAttemptTracker(this);
         initViews();
         setupPinlockView();
     }
@@ -59,22 +75,23 @@ public class MainActivity extends AppCompatActivity {
         // 5.) int - Pin length
         pinLockView.setupPinlockrView(this, mPinLockListener, mIndicatorDots, 5);
         pinLockView.disableBiometricLogin(true);
+        // The keypad disables itself while too many wrong pins lock the user out
+        pinLockView.setAttemptTracker(mAttemptTracker);
 
     }
 
     private enum PinState { SET_PIN, CONFIRM_PIN, LOGIN }
     private PinState currentState = PinState.SET_PIN;
-    private int initialPin = 0;
+    private String initialPin = null;
     private final PinlockrListener mPinLockListener = new PinlockrListener() {
         @Override
         public void onComplete(String pin) {
             // The following is a simple example of how the library works
             // Your logic will most probably look different
-            // If your application handles sensitive information, its recommended to encrypt the pin and store it in a secure database
-            int enteredPin = Integer.parseInt(pin);
+            // Only a salted hash of the pin is stored, see PinHasher
             switch (currentState) {
                 case SET_PIN:
-                    initialPin = enteredPin;
+                    initialPin = pin;
                     text_info.setText("Confirm PIN");
                     currentState = PinState.CONFIRM_PIN;
                     pinLockView.resetPinlockrView(); // Clear for confirmation
@@ -82,33 +99,27 @@ public class MainActivity extends AppCompatActivity {
                     break;
 
                 case CONFIRM_PIN:
-                    if (enteredPin == initialPin) {
+                    if (pin.equals(initialPin)) {
                         text_info.setText("LOGIN");
                         currentState = PinState.LOGIN;
-                        savePinInPrefs(enteredPin); // Save after confirmation
+                        initialPin = null;
+                        // Save after confirmation
+                        mPinHasher.hash(pin, ContextCompat.getMainExecutor(MainActivity.this), verifier -> savePin(verifier));
                         toastResponse("PIN Confirmed - You can now log in");
                         pinLockView.resetPinlockrView(); // Clear for login
                         pinLockView.disableBiometricLogin(false); // Pin was saved, we can now enable biometric login (if available)
                     } else {
                         text_info.setText("Enter PIN");
                         currentState = PinState.SET_PIN;
-                        initialPin = 0; // Reset initial PIN
+                        initialPin = null; // Reset initial PIN
                         pinLockView.resetPinlockrView(); // Clear and retry
                         toastResponse("PINs do not match, please try again");
                     }
                     break;
 
                 case LOGIN:
-                    if (getUserPin() == enteredPin) {
-                        text_info.setText("Welcome!");
-                        toastResponse("Successfully logged in");
-                        pinLockView.setVisibility(View.GONE); // Hide after login
-                        mIndicatorDots.setVisibility(View.GONE);
-                    } else {
-                        text_info.setText("Incorrect PIN");
-                        pinLockView.resetPinlockrView(); // Clear for retry
-                        toastResponse("Incorrect PIN, please try again");
-                    }
+                    // The stored verifier is read in the background, this waits for it without blocking
+                    mPinStore.load(ContextCompat.getMainExecutor(MainActivity.this), store -> verifyPin(pin, store.getVerifier()));
                     break;
             }
         }
@@ -123,9 +134,9 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void onBiometricFailed(int reason) {
-            if (reason == 1) {
+            if (reason == BIOMETRIC_FAILED) {
                 toastResponse("Biometric Failed");
-            } else if (reason == 2) {
+            } else if (reason == BIOMETRIC_CANCELLED) {
                 toastResponse("Biometric Cancelled");
             } else {
                 toastResponse("No Biometric Detected");
@@ -137,16 +148,29 @@ public class MainActivity extends AppCompatActivity {
         Toast.makeText(this, message, Toast.LENGTH_LONG).show();
     }
 
-    private void savePinInPrefs(int pin){
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putInt("UserPin", pin);
-        editor.apply();
+    private void savePin(byte[] verifier){
+        // The verifier and its metadata are written together, in the background
+        mPinStore.edit()
+                .putVerifier(verifier)
+                .putLong("pinSetAt", System.currentTimeMillis())
+                .apply();
     }
 
-    private int getUserPin(){
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        return prefs.getInt("UserPin", 0);
+    private void verifyPin(String pin, byte[] verifier) {
+        mPinHasher.verify(pin, verifier, ContextCompat.getMainExecutor(this), matches -> {
+            if (matches) {
+                mAttemptTracker.recordSuccess();
+                text_info.setText("Welcome!");
+                toastResponse("Successfully logged in");
+                pinLockView.setVisibility(View.GONE); // Hide after login
+                mIndicatorDots.setVisibility(View.GONE);
+            } else {
+                mAttemptTracker.recordFailure();
+                text_info.setText("Incorrect PIN");
+                pinLockView.resetPinlockrView(); // Clear for retry
+                toastResponse("Incorrect PIN, please try again");
+            }
+        });
     }
 
 }
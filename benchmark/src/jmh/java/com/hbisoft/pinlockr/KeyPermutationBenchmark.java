@@ -0,0 +1,57 @@
+package com.hbisoft.pinlockr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What reshuffling the scrambled keypad costs the UI thread, with a permutation taken from a
+ * filled {@link KeyPermutationPool}, compared to shuffling with {@link SecureRandom} on the spot
+ * (which is what the pool's background thread pays, and what the UI thread pays when the pool
+ * runs dry).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyPermutationBenchmark {
+
+    private final int[] mDigits = new int[KeyPermutationPool.DIGIT_COUNT];
+    private Runnable mRefill;
+    private KeyPermutationPool mFilledPool;
+    private KeyPermutationPool mEmptyPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Refills are run between invocations rather than on another thread, so they aren't timed
+        mFilledPool = new KeyPermutationPool(task -> mRefill = task, KeyPermutationPool.DEFAULT_CAPACITY, new SecureRandom());
+        mEmptyPool = new KeyPermutationPool(task -> { }, KeyPermutationPool.DEFAULT_CAPACITY, new SecureRandom());
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        if (mFilledPool.size() == 0) {
+            mFilledPool.prefill();
+            mRefill.run();
+        }
+    }
+
+    @Benchmark
+    public int[] takePrecomputed() {
+        mFilledPool.next(mDigits);
+        return mDigits;
+    }
+
+    @Benchmark
+    public int[] shuffleOnCallerThread() {
+        mEmptyPool.next(mDigits);
+        return mDigits;
+    }
+}
@@ -0,0 +1,88 @@
+package com.hbisoft.pinlockr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The entry logic behind {@code PinlockrView}, one keypad tap per {@link PinEntryEngine} call.
+ * Run with the gc profiler, every benchmark here should report 0 bytes allocated per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class PinEntryBenchmark {
+
+    @Param({"4", "8", "16", "32"})
+    public int pinLength;
+
+    private PinEntryEngine mEngine;
+    private PinEntryEngine mAutoResetEngine;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        PinEntryEngine.Listener listener = new PinEntryEngine.Listener() {
+            @Override
+            public void onEntryChanged(int changes, int length) {
+                blackhole.consume(changes);
+                blackhole.consume(length);
+            }
+
+            @Override
+            public void onComplete(CharSequence pin) {
+                blackhole.consume(pin);
+            }
+        };
+
+        mEngine = new PinEntryEngine(pinLength);
+        mEngine.setListener(listener);
+
+        mAutoResetEngine = new PinEntryEngine(pinLength);
+        mAutoResetEngine.setAutoReset(true);
+        mAutoResetEngine.setListener(listener);
+    }
+
+    /**
+     * Types all but the last digit, corrects two of them and clears the entry, without ever
+     * completing the PIN.
+     */
+    @Benchmark
+    public void appendDeleteReset() {
+        PinEntryEngine engine = mEngine;
+        for (int i = 0; i < pinLength - 1; i++) {
+            engine.appendDigit(i % 10);
+        }
+        engine.delete();
+        engine.delete();
+        engine.reset();
+    }
+
+    /**
+     * Types the whole PIN, which dispatches {@link PinEntryEngine.Listener#onComplete(CharSequence)}.
+     */
+    @Benchmark
+    public void completion() {
+        PinEntryEngine engine = mEngine;
+        for (int i = 0; i < pinLength; i++) {
+            engine.appendDigit(i % 10);
+        }
+        engine.reset();
+    }
+
+    /**
+     * Keeps typing past the end of the PIN, like {@code PinlockrView} does with the delete key
+     * hidden, so every {@code pinLength} digits the entry starts over.
+     */
+    @Benchmark
+    public void autoResetWrap() {
+        PinEntryEngine engine = mAutoResetEngine;
+        for (int i = 0; i < pinLength; i++) {
+            engine.appendDigit(i % 10);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.hbisoft.pinlockr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing and verifying a PIN with {@link PinHasher} at fixed iteration counts. Real
+ * devices use the calibrated count, so these numbers are for comparing changes, not for picking
+ * a cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PinHashBenchmark {
+
+    @Param({"10000", "100000"})
+    public int iterations;
+
+    private PinHasher mHasher;
+    private byte[] mVerifier;
+    private final char[] mPin = {'1', '2', '3', '4', '5', '6'};
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mHasher = new PinHasher(iterations);
+        mVerifier = mHasher.hash(mPin);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return mHasher.hash(mPin);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return mHasher.verify(mPin, mVerifier);
+    }
+}
@@ -0,0 +1,66 @@
+package com.hbisoft.pinlockr;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Keeps the {@link BiometricCryptoBinding} key in the AndroidKeyStore. The key never leaves
+ * secure hardware, can only be used right after a biometric authentication, and is invalidated
+ * when biometrics are enrolled.
+ */
+public class AndroidKeyStoreKeyProvider implements BiometricCryptoBinding.KeyProvider {
+
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private static final int KEY_SIZE = 256;
+
+    private final String mAlias;
+
+    public AndroidKeyStoreKeyProvider(@NonNull String alias) {
+        mAlias = alias;
+    }
+
+    @Override
+    public SecretKey getOrCreateKey() throws GeneralSecurityException {
+        Key key = loadKeyStore().getKey(mAlias, null);
+        if (key instanceof SecretKey) {
+            return (SecretKey) key;
+        }
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
+        keyGenerator.init(new KeyGenParameterSpec.Builder(mAlias,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(KEY_SIZE)
+                .setUserAuthenticationRequired(true)
+                .setInvalidatedByBiometricEnrollment(true)
+                .build());
+        return keyGenerator.generateKey();
+    }
+
+    @Override
+    public void deleteKey() throws GeneralSecurityException {
+        loadKeyStore().deleteEntry(mAlias);
+    }
+
+    private static KeyStore loadKeyStore() throws GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        try {
+            keyStore.load(null);
+        } catch (IOException e) {
+            throw new KeyStoreException(e);
+        }
+        return keyStore;
+    }
+}
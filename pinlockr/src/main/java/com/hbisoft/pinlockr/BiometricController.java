@@ -0,0 +1,250 @@
+package com.hbisoft.pinlockr;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.biometric.BiometricManager;
+import androidx.biometric.BiometricPrompt;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
+
+import javax.crypto.Cipher;
+
+/**
+ * Biometric prompt handling shared by {@link PinlockrView} and {@link PinlockrKeypadView}.
+ * <p>
+ * Whether biometrics can be used is asked once in the background on setup, and again whenever
+ * the host activity resumes, since that's when the user may come back from enrolling a
+ * fingerprint in the settings. Taps on the biometric key only read the cached answer, and a tap
+ * before the first answer arrives shows the prompt once it does, rather than asking the system
+ * on the main thread.
+ * <p>
+ * The prompt, its info and its callback are created once per host activity, on setup, so a tap
+ * only has to call {@link BiometricPrompt#authenticate}.
+ */
+class BiometricController {
+
+    interface OnAvailabilityChangedListener {
+        void onAvailabilityChanged(boolean available);
+    }
+
+    private static final int AUTHENTICATORS = BiometricManager.Authenticators.BIOMETRIC_STRONG;
+
+    private static final int AVAILABILITY_UNKNOWN = 0;
+    private static final int AVAILABILITY_AVAILABLE = 1;
+    private static final int AVAILABILITY_UNAVAILABLE = 2;
+
+    private final Context mContext;
+    private final Executor mMainExecutor;
+    private Activity mActivity;
+    private PinlockrListener mPinlockrListener;
+    private String mBiometricTitle = "Biometric Login";
+    private String mBiometricSubTitle = "Log in using your fingerprint";
+    private String mBiometricButtonText = "Cancel";
+    private PinlockrMetrics mMetrics;
+    private OnAvailabilityChangedListener mOnAvailabilityChangedListener;
+    private BiometricPrompt mBiometricPrompt;
+    private BiometricPrompt.PromptInfo mPromptInfo;
+    private BiometricCryptoBinding mCryptoBinding;
+    // Only read and written on the main thread
+    private int mAvailability = AVAILABILITY_UNKNOWN;
+    private boolean mRefreshPending;
+    // The biometric key was tapped before availability was known
+    private boolean mPromptPending;
+
+    private final DefaultLifecycleObserver mLifecycleObserver = new DefaultLifecycleObserver() {
+        @Override
+        public void onResume(@NonNull LifecycleOwner owner) {
+            refreshAvailability();
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            owner.getLifecycle().removeObserver(this);
+            // The prompt holds on to the activity
+            mBiometricPrompt = null;
+            mPromptPending = false;
+        }
+    };
+
+    private final BiometricPrompt.AuthenticationCallback mAuthenticationCallback = new BiometricPrompt.AuthenticationCallback() {
+        @Override
+        public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
+            super.onAuthenticationSucceeded(result);
+            if (mCryptoBinding != null) {
+                BiometricPrompt.CryptoObject cryptoObject = result.getCryptoObject();
+                try {
+                    if (cryptoObject == null || cryptoObject.getCipher() == null) {
+                        throw new GeneralSecurityException("No authenticated cipher");
+                    }
+                    mCryptoBinding.finish(cryptoObject.getCipher());
+                } catch (GeneralSecurityException e) {
+                    mPinlockrListener.onBiometricFailed(PinlockrListener.BIOMETRIC_FAILED);
+                    return;
+                }
+            }
+            mPinlockrListener.onBiometricSuccess();
+        }
+
+        @Override
+        public void onAuthenticationError(int errorCode, @NonNull CharSequence errString) {
+            super.onAuthenticationError(errorCode, errString);
+            int reason = getFailureReason(errorCode);
+            if (reason == PinlockrListener.BIOMETRIC_UNAVAILABLE) {
+                // The cached availability is out of date, e.g. the fingerprints were removed
+                refreshAvailability();
+            }
+            mPinlockrListener.onBiometricFailed(reason);
+        }
+
+        @Override
+        public void onAuthenticationFailed() {
+            super.onAuthenticationFailed();
+            mPinlockrListener.onBiometricFailed(PinlockrListener.BIOMETRIC_FAILED);
+        }
+    };
+
+    BiometricController(Context context) {
+        this.mContext = context;
+        this.mMainExecutor = ContextCompat.getMainExecutor(context);
+    }
+
+    void setup(Activity activity, PinlockrListener pinlockrListener) {
+        if (mActivity instanceof LifecycleOwner) {
+            ((LifecycleOwner) mActivity).getLifecycle().removeObserver(mLifecycleObserver);
+        }
+        mActivity = activity;
+        mPinlockrListener = pinlockrListener;
+        mBiometricPrompt = activity instanceof FragmentActivity
+                ? new BiometricPrompt((FragmentActivity) activity, mMainExecutor, mAuthenticationCallback)
+                : null;
+        if (mPromptInfo == null) {
+            mPromptInfo = buildPromptInfo();
+        }
+        if (activity instanceof LifecycleOwner) {
+            // Also calls onResume right away if the activity is already resumed
+            ((LifecycleOwner) activity).getLifecycle().addObserver(mLifecycleObserver);
+        }
+        refreshAvailability();
+    }
+
+    void setOnAvailabilityChangedListener(OnAvailabilityChangedListener listener) {
+        mOnAvailabilityChangedListener = listener;
+    }
+
+    /**
+     * Asks the system again, in the background, whether biometrics can be used. The listener is
+     * only called if the answer changed.
+     */
+    void refreshAvailability() {
+        if (mRefreshPending) {
+            return;
+        }
+        mRefreshPending = true;
+        PinlockrExecutors.biometric().execute(() -> {
+            boolean available = queryAvailability();
+            mMainExecutor.execute(() -> {
+                mRefreshPending = false;
+                setAvailable(available);
+                if (mPromptPending) {
+                    mPromptPending = false;
+                    onBiometricClicked();
+                }
+            });
+        });
+    }
+
+    private void setAvailable(boolean available) {
+        int availability = available ? AVAILABILITY_AVAILABLE : AVAILABILITY_UNAVAILABLE;
+        if (availability != mAvailability) {
+            mAvailability = availability;
+            if (mOnAvailabilityChangedListener != null) {
+                mOnAvailabilityChangedListener.onAvailabilityChanged(available);
+            }
+        }
+    }
+
+    void customizeDialog(String titleText, String subTitleText, String buttonTitle) {
+        if (titleText.equals(mBiometricTitle) && subTitleText.equals(mBiometricSubTitle)
+                && buttonTitle.equals(mBiometricButtonText) && mPromptInfo != null) {
+            return;
+        }
+        mBiometricTitle = titleText;
+        mBiometricSubTitle = subTitleText;
+        mBiometricButtonText = buttonTitle;
+        mPromptInfo = buildPromptInfo();
+    }
+
+    private BiometricPrompt.PromptInfo buildPromptInfo() {
+        return new BiometricPrompt.PromptInfo.Builder()
+                .setTitle(mBiometricTitle)
+                .setSubtitle(mBiometricSubTitle)
+                .setNegativeButtonText(mBiometricButtonText)
+                .build();
+    }
+
+    /**
+     * Authenticates with the binding's prepared cipher from now on, or without a crypto object
+     * when it's null.
+     */
+    void setCryptoBinding(BiometricCryptoBinding cryptoBinding) {
+        mCryptoBinding = cryptoBinding;
+    }
+
+    void setMetrics(PinlockrMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    void onBiometricClicked() {
+        if (mAvailability == AVAILABILITY_UNKNOWN) {
+            // The first check is still running, answered right after it
+            mPromptPending = true;
+            refreshAvailability();
+            return;
+        }
+        long start = mMetrics != null ? System.nanoTime() : 0;
+        Cipher cipher = mCryptoBinding != null ? mCryptoBinding.getPreparedCipher() : null;
+        if (mCryptoBinding != null && cipher == null) {
+            // Still preparing, nothing to unwrap, or the key was invalidated
+            mPinlockrListener.onBiometricFailed(PinlockrListener.BIOMETRIC_UNAVAILABLE);
+        } else if (mBiometricPrompt != null && mAvailability == AVAILABILITY_AVAILABLE) {
+            if (cipher != null) {
+                mBiometricPrompt.authenticate(mPromptInfo, new BiometricPrompt.CryptoObject(cipher));
+            } else {
+                mBiometricPrompt.authenticate(mPromptInfo);
+            }
+            if (mMetrics != null) {
+                mMetrics.onMetric(PinlockrMetrics.BIOMETRIC_PROMPT_LATENCY, System.nanoTime() - start);
+            }
+        } else {
+            mPinlockrListener.onBiometricFailed(PinlockrListener.BIOMETRIC_UNAVAILABLE);
+        }
+    }
+
+    // Check if the device has a biometric sensor, never on the main thread
+    private boolean queryAvailability() {
+        return BiometricManager.from(mContext).canAuthenticate(AUTHENTICATORS) == BiometricManager.BIOMETRIC_SUCCESS;
+    }
+
+    private static int getFailureReason(int errorCode) {
+        switch (errorCode) {
+            case BiometricPrompt.ERROR_USER_CANCELED:
+            case BiometricPrompt.ERROR_NEGATIVE_BUTTON:
+            case BiometricPrompt.ERROR_CANCELED:
+                return PinlockrListener.BIOMETRIC_CANCELLED;
+            case BiometricPrompt.ERROR_HW_NOT_PRESENT:
+            case BiometricPrompt.ERROR_HW_UNAVAILABLE:
+            case BiometricPrompt.ERROR_NO_BIOMETRICS:
+            case BiometricPrompt.ERROR_NO_DEVICE_CREDENTIAL:
+                return PinlockrListener.BIOMETRIC_UNAVAILABLE;
+            default:
+                return PinlockrListener.BIOMETRIC_FAILED;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.hbisoft.pinlockr;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Ties biometric unlock to a key that can only be used after the user authenticates, instead
+ * of trusting the prompt's success callback alone.
+ * <p>
+ * A secret, typically the verifier from {@link PinHasher}, is encrypted ("wrapped") with the key
+ * on enrollment, and decrypted ("unwrapped") on every unlock. Both happen with the cipher the
+ * prompt authenticated, so a successful unlock yields the secret itself.
+ * <p>
+ * Loading the key and initializing the cipher can take tens of milliseconds, so it's done
+ * ahead of time on the library's background thread whenever {@link #wrap(byte[])} or
+ * {@link #unwrap(byte[])} is called. A tap on the biometric key only picks up the prepared
+ * cipher.
+ *
+ * @see AndroidKeyStoreKeyProvider
+ * @see PinlockrView#setBiometricCryptoBinding(BiometricCryptoBinding)
+ */
+public final class BiometricCryptoBinding {
+
+    public interface KeyProvider {
+
+        /**
+         * Returns the key, creating it first if there is none. Called on a background thread.
+         */
+        SecretKey getOrCreateKey() throws GeneralSecurityException;
+
+        /**
+         * Deletes the key, e.g. after it was invalidated by a new biometric enrollment.
+         */
+        void deleteKey() throws GeneralSecurityException;
+    }
+
+    public interface OnResultListener {
+
+        /**
+         * Enrollment succeeded. Store {@code wrapped} and pass it to {@link #unwrap(byte[])}
+         * from now on. The binding switches to unwrapping it right away.
+         */
+        void onSecretWrapped(byte[] wrapped);
+
+        /**
+         * Unlock succeeded with the decrypted secret.
+         */
+        void onSecretUnwrapped(byte[] secret);
+
+        /**
+         * The key can't be used anymore, usually because biometrics were enrolled or removed.
+         * It has been deleted, and the secret has to be wrapped again after the user enters
+         * their PIN.
+         */
+        void onKeyInvalidated();
+    }
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private static final int MODE_NONE = 0;
+    private static final int MODE_WRAP = 1;
+    private static final int MODE_UNWRAP = 2;
+
+    private final KeyProvider mKeyProvider;
+    private final Executor mExecutor = PinlockrExecutors.background();
+    private Executor mCallbackExecutor;
+    private OnResultListener mOnResultListener;
+
+    // Guards the state below
+    private final Object mLock = new Object();
+    private int mMode = MODE_NONE;
+    private byte[] mInput;
+    // Incremented on every mode change, so a preparation that was overtaken is dropped
+    private int mGeneration;
+    private Cipher mPreparedCipher;
+
+    public BiometricCryptoBinding(KeyProvider keyProvider) {
+        mKeyProvider = keyProvider;
+    }
+
+    /**
+     * @param callbackExecutor where {@code listener} is called, usually the main thread
+     */
+    public void setOnResultListener(Executor callbackExecutor, OnResultListener listener) {
+        synchronized (mLock) {
+            mCallbackExecutor = callbackExecutor;
+            mOnResultListener = listener;
+        }
+    }
+
+    /**
+     * The next successful biometric authentication encrypts {@code secret}, and reports the
+     * result to {@link OnResultListener#onSecretWrapped(byte[])}.
+     */
+    public void wrap(byte[] secret) {
+        setMode(MODE_WRAP, secret.clone());
+    }
+
+    /**
+     * Every successful biometric authentication from now on decrypts {@code wrapped}, and
+     * reports the secret to {@link OnResultListener#onSecretUnwrapped(byte[])}.
+     */
+    public void unwrap(byte[] wrapped) {
+        setMode(MODE_UNWRAP, wrapped.clone());
+    }
+
+    /**
+     * Returns the cipher to authenticate with, or null if it isn't ready yet, there is nothing to
+     * wrap or unwrap, or the key was invalidated.
+     */
+    Cipher getPreparedCipher() {
+        synchronized (mLock) {
+            return mPreparedCipher;
+        }
+    }
+
+    /**
+     * Completes the wrap or unwrap with the cipher the prompt authenticated, reports the result,
+     * and prepares the cipher for the next authentication.
+     *
+     * @throws GeneralSecurityException if the cipher was rejected, e.g. the wrapped secret was
+     *                                  tampered with
+     */
+    void finish(Cipher cipher) throws GeneralSecurityException {
+        int mode;
+        byte[] input;
+        synchronized (mLock) {
+            if (cipher != mPreparedCipher) {
+                throw new GeneralSecurityException("The cipher was not prepared by this binding");
+            }
+            // A cipher can only be used once
+            mPreparedCipher = null;
+            mode = mMode;
+            input = mInput;
+        }
+
+        byte[] output;
+        try {
+            output = mode == MODE_WRAP
+                    ? cipher.doFinal(input)
+                    : cipher.doFinal(input, 1 + input[0], input.length - 1 - input[0]);
+        } catch (GeneralSecurityException e) {
+            prepare();
+            throw e;
+        }
+
+        if (mode == MODE_WRAP) {
+            byte[] iv = cipher.getIV();
+            byte[] wrapped = new byte[1 + iv.length + output.length];
+            wrapped[0] = (byte) iv.length;
+            System.arraycopy(iv, 0, wrapped, 1, iv.length);
+            System.arraycopy(output, 0, wrapped, 1 + iv.length, output.length);
+            unwrap(wrapped);
+            dispatch(listener -> listener.onSecretWrapped(wrapped));
+        } else {
+            prepare();
+            dispatch(listener -> listener.onSecretUnwrapped(output));
+        }
+    }
+
+    /**
+     * Prepares the cipher for the current mode in the background.
+     */
+    void prepare() {
+        int generation;
+        synchronized (mLock) {
+            if (mMode == MODE_NONE) {
+                return;
+            }
+            generation = mGeneration;
+        }
+        mExecutor.execute(() -> prepareCipher(generation));
+    }
+
+    private void setMode(int mode, byte[] input) {
+        synchronized (mLock) {
+            wipeInput();
+            mMode = mode;
+            mInput = input;
+            mGeneration++;
+            mPreparedCipher = null;
+        }
+        prepare();
+    }
+
+    // Called with mLock held before mInput is replaced. Only the wrap input is the cleartext
+    // secret, the unwrap input is already encrypted.
+    private void wipeInput() {
+        if (mMode == MODE_WRAP && mInput != null) {
+            Arrays.fill(mInput, (byte) 0);
+        }
+    }
+
+    private void prepareCipher(int generation) {
+        int mode;
+        byte[] input;
+        synchronized (mLock) {
+            if (generation != mGeneration) {
+                return;
+            }
+            mode = mMode;
+            input = mInput;
+        }
+
+        Cipher cipher;
+        try {
+            SecretKey key = mKeyProvider.getOrCreateKey();
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            if (mode == MODE_WRAP) {
+                cipher.init(Cipher.ENCRYPT_MODE, key);
+            } else {
+                int ivLength = input.length > 0 ? input[0] : -1;
+                if (ivLength <= 0 || ivLength >= input.length) {
+                    return;
+                }
+                cipher.init(Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(TAG_LENGTH_BITS, Arrays.copyOfRange(input, 1, 1 + ivLength)));
+            }
+        } catch (InvalidKeyException e) {
+            // On Android this is a KeyPermanentlyInvalidatedException, the key is gone for good
+            try {
+                mKeyProvider.deleteKey();
+            } catch (GeneralSecurityException ignored) {
+            }
+            synchronized (mLock) {
+                if (generation != mGeneration) {
+                    return;
+                }
+                wipeInput();
+                mMode = MODE_NONE;
+                mInput = null;
+            }
+            dispatch(OnResultListener::onKeyInvalidated);
+            return;
+        } catch (GeneralSecurityException e) {
+            // No cipher, so the biometric key reports itself as unavailable
+            return;
+        }
+
+        synchronized (mLock) {
+            if (generation == mGeneration) {
+                mPreparedCipher = cipher;
+            }
+        }
+    }
+
+    private interface Dispatch {
+        void to(OnResultListener listener);
+    }
+
+    private void dispatch(Dispatch dispatch) {
+        Executor executor;
+        OnResultListener listener;
+        synchronized (mLock) {
+            executor = mCallbackExecutor;
+            listener = mOnResultListener;
+        }
+        if (listener != null) {
+            executor.execute(() -> dispatch.to(listener));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.hbisoft.pinlockr;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Masks the entered digits for saved instance state.
+ * <p>
+ * Saved state is handed to the system, so the digits are XOR'd with a random pad that only
+ * lives in this process' memory. A configuration change restores the entry; state restored in
+ * a new process, or read by anyone else, can't be unmasked and is dropped, which is the same as
+ * the entry being wiped.
+ * <p>
+ * Layout: pad id (8) | masked digits (1 per digit)
+ */
+final class EntryMask {
+
+    private static final int PAD_ID_SIZE = 8;
+    // Longer entries aren't saved
+    static final int MAX_DIGITS = 64;
+
+    private static final byte[] sPad = new byte[MAX_DIGITS];
+    private static final long sPadId;
+
+    static {
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(sPad);
+        sPadId = random.nextLong();
+    }
+
+    private EntryMask() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns the masked digits of {@code pin}, or null if there is nothing to save.
+     */
+    static byte[] mask(PinBuffer pin) {
+        int length = pin.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return null;
+        }
+        byte[] masked = new byte[PAD_ID_SIZE + length];
+        for (int i = 0; i < PAD_ID_SIZE; i++) {
+            masked[i] = (byte) (sPadId >>> (8 * i));
+        }
+        for (int i = 0; i < length; i++) {
+            masked[PAD_ID_SIZE + i] = (byte) ((pin.charAt(i) - '0') ^ sPad[i]);
+        }
+        return masked;
+    }
+
+    /**
+     * Appends the digits in {@code masked} to {@code pin}, and wipes {@code masked}.
+     *
+     * @return false if {@code masked} wasn't saved by this process or doesn't fit {@code pin},
+     * in which case nothing is appended
+     */
+    static boolean unmask(byte[] masked, PinBuffer pin) {
+        try {
+            if (masked == null || masked.length <= PAD_ID_SIZE || masked.length - PAD_ID_SIZE > MAX_DIGITS
+                    || masked.length - PAD_ID_SIZE > pin.getCapacity() - pin.length()) {
+                return false;
+            }
+            long padId = 0;
+            for (int i = 0; i < PAD_ID_SIZE; i++) {
+                padId |= (masked[i] & 0xFFL) << (8 * i);
+            }
+            if (padId != sPadId) {
+                return false;
+            }
+            int length = masked.length - PAD_ID_SIZE;
+            for (int i = 0; i < length; i++) {
+                int digit = masked[PAD_ID_SIZE + i] ^ sPad[i];
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                pin.append(masked[PAD_ID_SIZE + i] ^ sPad[i]);
+            }
+            return true;
+        } finally {
+            if (masked != null) {
+                Arrays.fill(masked, (byte) 0);
+            }
+        }
+    }
+}
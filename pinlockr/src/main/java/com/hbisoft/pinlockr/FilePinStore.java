@@ -0,0 +1,311 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link PinStore} kept in a single file that's replaced atomically on every write: the new
+ * contents are written and synced to a temporary file, which is then renamed over the old one.
+ * <p>
+ * The file is read once, on the library's background thread, and all reads after that come from
+ * memory. Nothing waits for that read: until it's done, the getters only see the edits applied
+ * so far, see {@link #load(Executor, OnLoadedListener)}. {@link Editor#apply()} only updates
+ * memory and queues a write. When the write runs, it skips itself if a later edit is already
+ * queued, so a burst of edits costs one fsync.
+ */
+public class FilePinStore implements PinStore {
+
+    private static final String DEFAULT_FILE_NAME = "pinlockr_pin";
+    private static final int FILE_VERSION = 1;
+    // Far larger than any PinHasher verifier, a longer one means the file is damaged
+    static final int MAX_VERIFIER_LENGTH = 1024;
+
+    private final File mFile;
+    private final File mTempFile;
+    private final Executor mExecutor;
+
+    // Guards the in-memory state below
+    private final Object mLock = new Object();
+    private boolean mLoaded;
+    private byte[] mVerifier;
+    private final Map<String, Long> mValues = new HashMap<>();
+    // Edits applied before the file was read, replayed on top of it
+    private final List<EditorImpl> mPendingEdits = new ArrayList<>();
+    // Incremented by every edit, so a write knows if it's still the latest
+    private long mGeneration;
+
+    // Guards the file, and is always taken before mLock
+    private final Object mWriteLock = new Object();
+    private long mWrittenGeneration;
+    private int mDiskWrites;
+
+    /**
+     * Stores the PIN in the app's no-backup directory, since the verifier is only useful on the
+     * device that made it.
+     */
+    public FilePinStore(@NonNull Context context) {
+        this(new File(context.getNoBackupFilesDir(), DEFAULT_FILE_NAME));
+    }
+
+    public FilePinStore(@NonNull File file) {
+        this(file, PinlockrExecutors.background());
+    }
+
+    FilePinStore(File file, Executor executor) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+        mExecutor = executor;
+        mExecutor.execute(this::loadFromDisk);
+    }
+
+    @Override
+    public void load(@NonNull Executor callbackExecutor, @NonNull OnLoadedListener listener) {
+        synchronized (mLock) {
+            if (mLoaded) {
+                callbackExecutor.execute(() -> listener.onLoaded(this));
+                return;
+            }
+        }
+        mExecutor.execute(() -> {
+            loadFromDisk();
+            callbackExecutor.execute(() -> listener.onLoaded(this));
+        });
+    }
+
+    @Override
+    public boolean isLoaded() {
+        synchronized (mLock) {
+            return mLoaded;
+        }
+    }
+
+    @Nullable
+    @Override
+    public byte[] getVerifier() {
+        synchronized (mLock) {
+            return mVerifier != null ? mVerifier.clone() : null;
+        }
+    }
+
+    @Override
+    public boolean hasPin() {
+        synchronized (mLock) {
+            return mVerifier != null;
+        }
+    }
+
+    @Override
+    public long getLong(@NonNull String key, long defaultValue) {
+        synchronized (mLock) {
+            Long value = mValues.get(key);
+            return value != null ? value : defaultValue;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    /**
+     * Reads the file, once. Runs on the executor, or on the caller's thread from
+     * {@link Editor#commit()}.
+     */
+    private void loadFromDisk() {
+        synchronized (mWriteLock) {
+            synchronized (mLock) {
+                if (mLoaded) {
+                    return;
+                }
+            }
+            byte[] verifier = null;
+            Map<String, Long> values = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+                if (in.readInt() == FILE_VERSION) {
+                    int verifierLength = in.readInt();
+                    if (verifierLength > MAX_VERIFIER_LENGTH) {
+                        throw new IOException("Verifier too long: " + verifierLength);
+                    }
+                    if (verifierLength >= 0) {
+                        verifier = new byte[verifierLength];
+                        in.readFully(verifier);
+                    }
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        values.put(in.readUTF(), in.readLong());
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                // No PIN has been stored yet
+            } catch (IOException e) {
+                // A damaged file is treated as no PIN, rather than failing every read
+                verifier = null;
+                values.clear();
+            }
+
+            synchronized (mLock) {
+                mVerifier = verifier;
+                mValues.clear();
+                mValues.putAll(values);
+                for (EditorImpl edit : mPendingEdits) {
+                    edit.applyToMemory();
+                }
+                mPendingEdits.clear();
+                mLoaded = true;
+            }
+        }
+    }
+
+    private boolean writeToDisk() {
+        // The edits must go on top of what's on disk, so the file is read first if it wasn't
+        loadFromDisk();
+        synchronized (mWriteLock) {
+            long generation;
+            byte[] verifier;
+            Map<String, Long> values;
+            synchronized (mLock) {
+                generation = mGeneration;
+                if (generation <= mWrittenGeneration) {
+                    // A later write already covered this edit
+                    return true;
+                }
+                verifier = mVerifier;
+                values = new HashMap<>(mValues);
+            }
+
+            try (FileOutputStream fileOut = new FileOutputStream(mTempFile)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(FILE_VERSION);
+                if (verifier != null) {
+                    out.writeInt(verifier.length);
+                    out.write(verifier);
+                } else {
+                    out.writeInt(-1);
+                }
+                out.writeInt(values.size());
+                for (Map.Entry<String, Long> entry : values.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            } catch (IOException e) {
+                // The old file is untouched
+                mTempFile.delete();
+                return false;
+            }
+            if (!mTempFile.renameTo(mFile)) {
+                mTempFile.delete();
+                return false;
+            }
+            mWrittenGeneration = generation;
+            mDiskWrites++;
+            return true;
+        }
+    }
+
+    /**
+     * The number of times the file was replaced, for tests.
+     */
+    int getDiskWriteCount() {
+        synchronized (mWriteLock) {
+            return mDiskWrites;
+        }
+    }
+
+    private final class EditorImpl implements Editor {
+        private boolean mClear;
+        private boolean mVerifierChanged;
+        private byte[] mNewVerifier;
+        // A null value removes the key
+        private final Map<String, Long> mChanges = new HashMap<>();
+
+        @NonNull
+        @Override
+        public Editor putVerifier(@Nullable byte[] verifier) {
+            mVerifierChanged = true;
+            mNewVerifier = verifier != null ? verifier.clone() : null;
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public Editor putLong(@NonNull String key, long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public Editor remove(@NonNull String key) {
+            mChanges.put(key, null);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            commitToMemory();
+            mExecutor.execute(FilePinStore.this::writeToDisk);
+        }
+
+        @Override
+        public boolean commit() {
+            commitToMemory();
+            return writeToDisk();
+        }
+
+        // Never waits for the file to be read, an edit made before that is replayed on top of it
+        private void commitToMemory() {
+            synchronized (mLock) {
+                applyToMemory();
+                if (!mLoaded) {
+                    mPendingEdits.add(this);
+                }
+                mGeneration++;
+            }
+        }
+
+        // Called with mLock held
+        void applyToMemory() {
+            if (mClear) {
+                mVerifier = null;
+                mValues.clear();
+            }
+            if (mVerifierChanged) {
+                mVerifier = mNewVerifier;
+            }
+            for (Map.Entry<String, Long> entry : mChanges.entrySet()) {
+                if (entry.getValue() == null) {
+                    mValues.remove(entry.getKey());
+                } else {
+                    mValues.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+}
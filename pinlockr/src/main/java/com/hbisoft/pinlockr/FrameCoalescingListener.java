@@ -0,0 +1,56 @@
+package com.hbisoft.pinlockr;
+
+import android.view.Choreographer;
+
+/**
+ * Sits between {@link PinEntryEngine} and a view, and applies entry changes at most once per
+ * frame. Pasted or very fast input changes the entry several times before the next vsync, and
+ * only the last state is drawn anyway, so the dots and delete key are updated once with the
+ * combined changes instead of for every digit.
+ * <p>
+ * {@link PinEntryEngine.Listener#onComplete(CharSequence)} is passed on right away, since the
+ * PIN is only valid during that call.
+ */
+final class FrameCoalescingListener implements PinEntryEngine.Listener, Choreographer.FrameCallback {
+
+    private final PinEntryEngine.Listener mTarget;
+    // The changes since the last frame, 0 if none are pending
+    private int mPendingChanges;
+    private int mPendingLength;
+
+    FrameCoalescingListener(PinEntryEngine.Listener target) {
+        mTarget = target;
+    }
+
+    @Override
+    public void onEntryChanged(int changes, int length) {
+        if (mPendingChanges == 0) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        mPendingChanges |= changes;
+        mPendingLength = length;
+    }
+
+    @Override
+    public void onComplete(CharSequence pin) {
+        mTarget.onComplete(pin);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * Applies the pending changes now, e.g. before the view is detached and stops drawing.
+     */
+    void flush() {
+        if (mPendingChanges == 0) {
+            return;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        int changes = mPendingChanges;
+        mPendingChanges = 0;
+        mTarget.onEntryChanged(changes, mPendingLength);
+    }
+}
@@ -0,0 +1,47 @@
+package com.hbisoft.pinlockr;
+
+import android.view.KeyEvent;
+
+/**
+ * Maps physical keyboard, numpad and remote keys to keypad input, with arithmetic on the key
+ * codes rather than a lookup, so typing on a hardware keyboard costs no more than a tap.
+ */
+final class HardwareKeys {
+
+    // Not a keypad key, let the event through
+    static final int NONE = -1;
+    static final int DELETE = -2;
+    static final int SUBMIT = -3;
+
+    private HardwareKeys() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns the digit {@code event} types, {@link #DELETE}, {@link #SUBMIT} or {@link #NONE}.
+     *
+     * @param enterSubmits whether Enter submits the PIN. Pass false while one of the keypad's
+     *                     own keys has focus, so Enter clicks it like it would any button
+     */
+    static int map(KeyEvent event, boolean enterSubmits) {
+        int keyCode = event.getKeyCode();
+        if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9) {
+            // Shift turns the top row into symbols
+            return event.hasNoModifiers() ? keyCode - KeyEvent.KEYCODE_0 : NONE;
+        }
+        if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0 && keyCode <= KeyEvent.KEYCODE_NUMPAD_9) {
+            // Without num lock the numpad keys navigate instead
+            return event.isNumLockOn() ? keyCode - KeyEvent.KEYCODE_NUMPAD_0 : NONE;
+        }
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DEL:
+                return DELETE;
+            case KeyEvent.KEYCODE_NUMPAD_ENTER:
+                return SUBMIT;
+            case KeyEvent.KEYCODE_ENTER:
+                return enterSubmits ? SUBMIT : NONE;
+            default:
+                return NONE;
+        }
+    }
+}
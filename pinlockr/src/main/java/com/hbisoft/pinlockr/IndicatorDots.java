@@ -1,13 +1,16 @@
 package com.hbisoft.pinlockr;
 
-import android.animation.LayoutTransition;
+import android.animation.Animator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
+import android.view.ViewAnimationUtils;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
 
@@ -16,6 +19,7 @@ import androidx.core.view.ViewCompat;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
 
 
 public class IndicatorDots extends LinearLayout {
@@ -28,6 +32,15 @@ public class IndicatorDots extends LinearLayout {
         int FILL_WITH_ANIMATION = 2;
     }
 
+    @IntDef({RenderMode.VIEWS, RenderMode.CANVAS})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface RenderMode {
+        // One child view per dot
+        int VIEWS = 0;
+        // Every dot drawn by this view in a single onDraw, without child views
+        int CANVAS = 1;
+    }
+
     private static final int DEFAULT_PIN_LENGTH = 4;
 
     private int mDotDiameter;
@@ -36,8 +49,21 @@ public class IndicatorDots extends LinearLayout {
     private int mEmptyDrawable;
     private int mPinLength;
     private int mIndicatorType;
+    private int mRenderMode;
 
     private int mPreviousLength;
+    private Dot[] mDotPool = new Dot[0];
+
+    private int mFillColor;
+    private int mEmptyColor;
+    private boolean wasFillSet = false;
+    private boolean wasEmptySet = false;
+
+    // Only used in RenderMode.CANVAS
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mEmptyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private ValueAnimator mAppearAnimator;
+    private float mAppearFraction = 1f;
 
     public IndicatorDots(Context context) {
         this(context, null);
@@ -60,117 +86,202 @@ public class IndicatorDots extends LinearLayout {
             mPinLength = typedArray.getInt(R.styleable.PinlockrView_pinLength, DEFAULT_PIN_LENGTH);
             mIndicatorType = typedArray.getInt(R.styleable.PinlockrView_indicatorType,
                     IndicatorType.FIXED);
+            mRenderMode = typedArray.getInt(R.styleable.PinlockrView_indicatorRenderMode,
+                    RenderMode.VIEWS);
         } finally {
             typedArray.recycle();
         }
 
+        resolveDotColors();
         initView(context);
     }
 
     private void initView(Context context) {
         ViewCompat.setLayoutDirection(this, ViewCompat.LAYOUT_DIRECTION_LTR);
+        setLayoutTransition(null);
+        if (mRenderMode == RenderMode.CANVAS) {
+            setWillNotDraw(false);
+            applyDotColors();
+            return;
+        }
+        if (mDotPool.length != mPinLength) {
+            mDotPool = Arrays.copyOf(mDotPool, mPinLength);
+        }
         if (mIndicatorType == 0) {
             for (int i = 0; i < mPinLength; i++) {
-                View dot = new View(context);
-                emptyDot(dot);
-
-                LayoutParams params = new LayoutParams(mDotDiameter,
-                        mDotDiameter);
-                params.setMargins(mDotSpacing, 0, mDotSpacing, 0);
-                dot.setLayoutParams(params);
-
+                Dot dot = obtainDot(i);
+                dot.setFilled(false);
                 addView(dot);
             }
-        } else if (mIndicatorType == 2) {
-            setLayoutTransition(new LayoutTransition());
+        } else if (mIndicatorType == IndicatorType.FILL_WITH_ANIMATION) {
+            // Every dot is laid out up front and only shown once it's filled, so typing never
+            // lays out the row again
+            for (int i = 0; i < mPinLength; i++) {
+                Dot dot = obtainDot(i);
+                dot.setFilled(true);
+                dot.setShown(false, false);
+                addView(dot);
+            }
+        }
+    }
+
+    /**
+     * Returns the pooled dot for {@code index}, creating it the first time. Dots are kept when
+     * they are removed, so typing, deleting and resetting reuse the same views.
+     */
+    private Dot obtainDot(int index) {
+        Dot dot = mDotPool[index];
+        if (dot == null) {
+            dot = new Dot(getContext(), mDotDiameter, mFillColor, mEmptyColor);
+
+            LayoutParams params = new LayoutParams(mDotDiameter,
+                    mDotDiameter);
+            params.setMargins(mDotSpacing, 0, mDotSpacing, 0);
+            dot.setLayoutParams(params);
+            mDotPool[index] = dot;
         }
+        // Pooled dots can still be hidden from FILL_WITH_ANIMATION
+        dot.setShown(true, false);
+        return dot;
     }
 
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         // If the indicator type is not fixed
-        if (mIndicatorType != 0) {
+        if (mIndicatorType != 0 && mRenderMode == RenderMode.VIEWS) {
             ViewGroup.LayoutParams params = this.getLayoutParams();
             params.height = mDotDiameter;
             requestLayout();
         }
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mRenderMode != RenderMode.CANVAS) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        // Always sized for the whole PIN, so filling a dot never changes the size of the view
+        int desiredWidth = getPaddingLeft() + getPaddingRight() + mPinLength * (mDotDiameter + 2 * mDotSpacing);
+        int desiredHeight = getPaddingTop() + getPaddingBottom() + mDotDiameter;
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec),
+                resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mRenderMode != RenderMode.CANVAS) {
+            return;
+        }
+        boolean fixed = mIndicatorType == IndicatorType.FIXED;
+        int count = fixed ? mPinLength : mPreviousLength;
+        float step = mDotDiameter + 2 * mDotSpacing;
+        float radius = mDotDiameter / 2f;
+        float contentWidth = count * step;
+        float x = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight() - contentWidth) / 2f
+                + mDotSpacing + radius;
+        float y = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        for (int i = 0; i < count; i++) {
+            boolean filled = i < mPreviousLength;
+            float r = radius;
+            if (!fixed && i == mPreviousLength - 1) {
+                r *= mAppearFraction;
+            }
+            canvas.drawCircle(x, y, r, filled ? mFillPaint : mEmptyPaint);
+            x += step;
+        }
+    }
+
     void updateDot(int length) {
+        if (mRenderMode == RenderMode.CANVAS) {
+            if (mIndicatorType == IndicatorType.FILL_WITH_ANIMATION && length > mPreviousLength) {
+                startAppearAnimation();
+            }
+            mPreviousLength = length;
+            invalidate();
+            return;
+        }
         if (mIndicatorType == 0) {
-            if (length > 0) {
-                if (length > mPreviousLength) {
-                    fillDot(getChildAt(length - 1));
-                } else {
-                    emptyDot(getChildAt(length));
-                }
-                mPreviousLength = length;
-            } else {
-                // When {@code mPinLength} is 0, we need to reset all the views back to empty
-                for (int i = 0; i < getChildCount(); i++) {
-                    View v = getChildAt(i);
-                    emptyDot(v);
-                }
-                mPreviousLength = 0;
+            // Only swaps the backgrounds of the dots whose state changed
+            for (int i = 0; i < getChildCount(); i++) {
+                ((Dot) getChildAt(i)).setFilled(i < length);
+            }
+        } else if (mIndicatorType == IndicatorType.FILL_WITH_ANIMATION) {
+            for (int i = 0; i < getChildCount(); i++) {
+                ((Dot) getChildAt(i)).setShown(i < length, true);
             }
         } else {
             if (length > 0) {
-                if (length > mPreviousLength) {
-                    View dot = new View(getContext());
-                    fillDot(dot);
-
-                    LayoutParams params = new LayoutParams(mDotDiameter,
-                            mDotDiameter);
-                    params.setMargins(mDotSpacing, 0, mDotSpacing, 0);
-                    dot.setLayoutParams(params);
-
-                    addView(dot, length - 1);
-                } else {
-                    removeViewAt(length);
+                while (getChildCount() < length && getChildCount() < mDotPool.length) {
+                    Dot dot = obtainDot(getChildCount());
+                    dot.setFilled(true);
+                    addView(dot, getChildCount());
+                }
+                while (getChildCount() > length) {
+                    removeViewAt(getChildCount() - 1);
                 }
-                mPreviousLength = length;
             } else {
                 removeAllViews();
-                mPreviousLength = 0;
             }
         }
+        mPreviousLength = length;
     }
 
-    private void emptyDot(View dot) {
-        GradientDrawable drawable = new GradientDrawable();
-        drawable.setShape(GradientDrawable.OVAL);
-        // Extract color from the default empty drawable
-        Drawable originalDrawable = getResources().getDrawable(mEmptyDrawable, getContext().getTheme());
-        if (originalDrawable instanceof GradientDrawable) {
-            int defaultColor = ((GradientDrawable) originalDrawable).getColor().getDefaultColor();
-            drawable.setColor(defaultColor);
-        } else {
-            // Fallback to greyish if the drawable type is unexpected
-            drawable.setColor(getResources().getColor(android.R.color.darker_gray, getContext().getTheme()));
+    // The dot colors are read from the dot drawables once, instead of on every key press
+    private void resolveDotColors() {
+        if (!wasFillSet) {
+            mFillColor = getDrawableColor(mFillDrawable, android.R.color.black);
+        }
+        if (!wasEmptySet) {
+            mEmptyColor = getDrawableColor(mEmptyDrawable, android.R.color.darker_gray);
         }
-        drawable.setSize(mDotDiameter, mDotDiameter);
-        dot.setBackground(drawable);
     }
 
-    private void fillDot(View dot) {
-        GradientDrawable drawable = new GradientDrawable();
-        drawable.setShape(GradientDrawable.OVAL);
-        if (wasFillSet && mCustomFillColor != 0) {
-            drawable.setColor(mCustomFillColor);
-        } else {
-            // Extract color from the default filled drawable
-            Drawable originalDrawable = getResources().getDrawable(mFillDrawable, getContext().getTheme());
-            if (originalDrawable instanceof GradientDrawable) {
-                int defaultColor = ((GradientDrawable) originalDrawable).getColor().getDefaultColor();
-                drawable.setColor(defaultColor);
-            } else {
-                // Fallback to black if the drawable type is unexpected
-                drawable.setColor(getResources().getColor(android.R.color.black, getContext().getTheme()));
+    private int getDrawableColor(int drawableRes, int fallbackColorRes) {
+        Drawable originalDrawable = ResourceUtils.getDrawable(getContext(), drawableRes);
+        if (originalDrawable instanceof GradientDrawable && ((GradientDrawable) originalDrawable).getColor() != null) {
+            return ((GradientDrawable) originalDrawable).getColor().getDefaultColor();
+        }
+        // Fallback if the drawable type is unexpected
+        return ResourceUtils.getColor(getContext(), fallbackColorRes);
+    }
+
+    private void applyDotColors() {
+        if (mRenderMode == RenderMode.CANVAS) {
+            mFillPaint.setColor(mFillColor);
+            mEmptyPaint.setColor(mEmptyColor);
+            invalidate();
+            return;
+        }
+        // Update the pooled dots too, not only the attached ones
+        for (Dot dot : mDotPool) {
+            if (dot != null) {
+                dot.setColors(mFillColor, mEmptyColor);
             }
         }
-        drawable.setSize(mDotDiameter, mDotDiameter);
-        dot.setBackground(drawable);
+    }
+
+    private void startAppearAnimation() {
+        if (mAppearAnimator == null) {
+            mAppearAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mAppearAnimator.setDuration(getResources().getInteger(android.R.integer.config_shortAnimTime));
+            mAppearAnimator.addUpdateListener(animation -> {
+                mAppearFraction = (float) animation.getAnimatedValue();
+                invalidate();
+            });
+        }
+        mAppearAnimator.cancel();
+        mAppearAnimator.start();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAppearAnimator != null) {
+            mAppearAnimator.end();
+        }
     }
 
     public int getPinLength() {
@@ -178,6 +289,20 @@ public class IndicatorDots extends LinearLayout {
     }
 
     public void setPinLength(int pinLength) {
+        if (mRenderMode == RenderMode.CANVAS) {
+            if (pinLength != mPinLength) {
+                this.mPinLength = pinLength;
+                requestLayout();
+            }
+            mPreviousLength = Math.min(mPreviousLength, pinLength);
+            invalidate();
+            return;
+        }
+        if (pinLength == mPinLength) {
+            // Same dots, only emptied again
+            updateDot(0);
+            return;
+        }
         this.mPinLength = pinLength;
         removeAllViews();
         initView(getContext());
@@ -195,35 +320,88 @@ public class IndicatorDots extends LinearLayout {
         initView(getContext());
     }
 
-    public void setEmptyDotColor(int color) {
-        GradientDrawable drawable = new GradientDrawable();
-        drawable.setShape(GradientDrawable.OVAL);
-        drawable.setColor(color);
-        drawable.setSize(mDotDiameter, mDotDiameter);
-        for (int i = 0; i < getChildCount(); i++) {
-            View dot = getChildAt(i);
-            if (i >= mPreviousLength) { // Empty dots are those beyond the current length
-                dot.setBackground(drawable);
-            }
+    public
+    @RenderMode
+    int getRenderMode() {
+        return mRenderMode;
+    }
+
+    public void setRenderMode(@RenderMode int renderMode) {
+        this.mRenderMode = renderMode;
+        removeAllViews();
+        initView(getContext());
+        if (renderMode == RenderMode.VIEWS) {
+            updateDot(mPreviousLength);
         }
+        requestLayout();
+        invalidate();
+    }
+
+    public void setEmptyDotColor(int color) {
+        wasEmptySet = true;
+        mEmptyColor = color;
+        applyDotColors();
     }
 
-    private int mCustomFillColor = 0; // Store the last set fill color
-    private boolean wasFillSet = false;
     public void setFillDotColor(int color) {
         wasFillSet = true;
-        mCustomFillColor = color;
-        GradientDrawable drawable = new GradientDrawable();
-        drawable.setShape(GradientDrawable.OVAL);
-        drawable.setColor(color);
-        drawable.setSize(mDotDiameter, mDotDiameter);
-        Log.e("IndicatorDots", "Setting fill color to " + Integer.toHexString(color) + ", mPreviousLength: " + mPreviousLength + ", childCount: " + getChildCount());
-        for (int i = 0; i < mPreviousLength && i < getChildCount(); i++) {
-            View dot = getChildAt(i);
-            if (dot != null) {
-                dot.setBackground(drawable);
-                Log.e("IndicatorDots", "Applied fill color to dot at index " + i);
+        mFillColor = color;
+        applyDotColors();
+    }
+
+    /**
+     * A single dot. It builds its filled and empty drawables once, so filling or emptying it
+     * only swaps its background.
+     */
+    private static class Dot extends View {
+        private final GradientDrawable mFilledDrawable = new GradientDrawable();
+        private final GradientDrawable mEmptyDrawable = new GradientDrawable();
+        private boolean mFilled;
+        private Animator mAppearAnimator;
+
+        Dot(Context context, int diameter, int fillColor, int emptyColor) {
+            super(context);
+            mFilledDrawable.setShape(GradientDrawable.OVAL);
+            mFilledDrawable.setSize(diameter, diameter);
+            mEmptyDrawable.setShape(GradientDrawable.OVAL);
+            mEmptyDrawable.setSize(diameter, diameter);
+            setColors(fillColor, emptyColor);
+            setBackground(mEmptyDrawable);
+        }
+
+        void setFilled(boolean filled) {
+            if (mFilled != filled) {
+                mFilled = filled;
+                setBackground(filled ? mFilledDrawable : mEmptyDrawable);
+            }
+        }
+
+        /**
+         * Shows or hides the dot, without changing the layout. Appearing grows the dot with a
+         * circular reveal, which runs on the RenderThread, so it stays smooth while the UI
+         * thread is busy, e.g. checking the complete PIN.
+         */
+        void setShown(boolean shown, boolean animate) {
+            if (shown == (getVisibility() == VISIBLE)) {
+                return;
             }
+            if (mAppearAnimator != null) {
+                mAppearAnimator.cancel();
+                mAppearAnimator = null;
+            }
+            setVisibility(shown ? VISIBLE : INVISIBLE);
+            // The reveal can only start on an attached, laid out view
+            if (shown && animate && isAttachedToWindow() && isLaidOut()) {
+                mAppearAnimator = ViewAnimationUtils.createCircularReveal(this, getWidth() / 2, getHeight() / 2,
+                        0, Math.max(getWidth(), getHeight()) / 2f);
+                mAppearAnimator.setDuration(getResources().getInteger(android.R.integer.config_shortAnimTime));
+                mAppearAnimator.start();
+            }
+        }
+
+        void setColors(int fillColor, int emptyColor) {
+            mFilledDrawable.setColor(fillColor);
+            mEmptyDrawable.setColor(emptyColor);
         }
     }
 }
@@ -0,0 +1,97 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.provider.Settings;
+import android.view.HapticFeedbackConstants;
+import android.view.View;
+
+/**
+ * Click sound and haptic feedback for the keypad keys, played when a key is pressed rather than
+ * when it's released.
+ * <p>
+ * The click sample is loaded into a {@link SoundPool} when the keypad is attached and released
+ * when it's detached, so a key press only starts playback of an already decoded sample. Haptics
+ * go through {@link View#performHapticFeedback(int)}, which needs no permission and follows the
+ * system's touch feedback setting. Nothing is allocated per key press.
+ *
+ * @see PinlockrView#setKeyFeedback(int)
+ * @see PinlockrKeypadView#setKeyFeedback(int)
+ */
+public final class KeyFeedback {
+
+    // Flags passed to setKeyFeedback
+    public static final int NONE = 0;
+    public static final int SOUND = 1;
+    public static final int HAPTIC = 1 << 1;
+
+    private static final int MAX_STREAMS = 2;
+
+    private final int mFlags;
+    private SoundPool mSoundPool;
+    private int mClickSoundId;
+    // Loading is asynchronous, a press before it finished is silent
+    private boolean mClickSoundLoaded = false;
+    // Read from the system's touch sounds setting when the sample is loaded
+    private boolean mSoundEnabled = false;
+
+    KeyFeedback(int flags) {
+        mFlags = flags;
+    }
+
+    int getFlags() {
+        return mFlags;
+    }
+
+    /**
+     * Loads the click sample, if sound is on. Called when the keypad is attached.
+     */
+    void load(Context context) {
+        if ((mFlags & SOUND) == 0 || mSoundPool != null) {
+            return;
+        }
+        mSoundEnabled = Settings.System.getInt(context.getContentResolver(),
+                Settings.System.SOUND_EFFECTS_ENABLED, 1) != 0;
+        if (!mSoundEnabled) {
+            return;
+        }
+        mSoundPool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        mSoundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                mClickSoundLoaded = status == 0 && sampleId == mClickSoundId;
+            }
+        });
+        mClickSoundId = mSoundPool.load(context, R.raw.key_click, 1);
+    }
+
+    /**
+     * Releases the click sample. Called when the keypad is detached.
+     */
+    void release() {
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+            mClickSoundLoaded = false;
+        }
+    }
+
+    /**
+     * Plays the feedback for a key pressed on {@code view}.
+     */
+    void onKeyDown(View view) {
+        if ((mFlags & HAPTIC) != 0) {
+            view.performHapticFeedback(HapticFeedbackConstants.KEYBOARD_TAP);
+        }
+        if (mClickSoundLoaded && mSoundEnabled) {
+            mSoundPool.play(mClickSoundId, 1f, 1f, 0, 0, 1f);
+        }
+    }
+}
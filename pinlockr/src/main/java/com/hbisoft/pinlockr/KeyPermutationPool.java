@@ -0,0 +1,130 @@
+package com.hbisoft.pinlockr;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Random orders of the digits 0-9 for the scrambled keypad.
+ * <p>
+ * Seeding a {@link SecureRandom} and drawing from it can block, so permutations are shuffled
+ * ahead of time on the library's background thread and kept in a ring. Taking one only copies
+ * ten ints. If the ring runs dry, e.g. when reshuffling faster than it refills, the permutation
+ * is shuffled on the caller's thread instead.
+ */
+final class KeyPermutationPool {
+
+    static final int DIGIT_COUNT = 10;
+    static final int DEFAULT_CAPACITY = 16;
+
+    private static volatile KeyPermutationPool sShared;
+
+    private final Executor mExecutor;
+    private final Random mRandom;
+
+    // Guards the state below
+    private final Object mLock = new Object();
+    private final int[][] mPermutations;
+    private int mHead;
+    private int mCount;
+    private boolean mRefillPending;
+
+    KeyPermutationPool(Executor executor, int capacity, Random random) {
+        mExecutor = executor;
+        mRandom = random;
+        mPermutations = new int[capacity][DIGIT_COUNT];
+    }
+
+    /**
+     * The pool shared by every keypad in the process.
+     */
+    static KeyPermutationPool shared() {
+        KeyPermutationPool pool = sShared;
+        if (pool == null) {
+            synchronized (KeyPermutationPool.class) {
+                pool = sShared;
+                if (pool == null) {
+                    pool = new KeyPermutationPool(PinlockrExecutors.background(), DEFAULT_CAPACITY, new SecureRandom());
+                    sShared = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Starts filling the pool in the background, if it isn't full.
+     */
+    void prefill() {
+        synchronized (mLock) {
+            if (mRefillPending || mCount == mPermutations.length) {
+                return;
+            }
+            mRefillPending = true;
+        }
+        mExecutor.execute(this::refill);
+    }
+
+    /**
+     * Copies the next permutation into {@code out}, which must hold {@link #DIGIT_COUNT} ints.
+     */
+    void next(int[] out) {
+        boolean taken = false;
+        boolean low;
+        synchronized (mLock) {
+            if (mCount > 0) {
+                int[] permutation = mPermutations[mHead];
+                System.arraycopy(permutation, 0, out, 0, DIGIT_COUNT);
+                // A used order shouldn't linger in memory
+                Arrays.fill(permutation, 0);
+                mHead = (mHead + 1) % mPermutations.length;
+                mCount--;
+                taken = true;
+            }
+            low = mCount <= mPermutations.length / 2;
+        }
+        if (!taken) {
+            shuffle(out);
+        }
+        if (low) {
+            prefill();
+        }
+    }
+
+    int size() {
+        synchronized (mLock) {
+            return mCount;
+        }
+    }
+
+    private void refill() {
+        int[] permutation = new int[DIGIT_COUNT];
+        while (true) {
+            shuffle(permutation);
+            synchronized (mLock) {
+                if (mCount == mPermutations.length) {
+                    mRefillPending = false;
+                    break;
+                }
+                int tail = (mHead + mCount) % mPermutations.length;
+                System.arraycopy(permutation, 0, mPermutations[tail], 0, DIGIT_COUNT);
+                mCount++;
+            }
+        }
+        Arrays.fill(permutation, 0);
+    }
+
+    // Fisher-Yates shuffle of 0-9 into out
+    private void shuffle(int[] out) {
+        for (int i = 0; i < DIGIT_COUNT; i++) {
+            out[i] = i;
+        }
+        for (int i = DIGIT_COUNT - 1; i > 0; i--) {
+            int j = mRandom.nextInt(i + 1);
+            int digit = out[i];
+            out[i] = out[j];
+            out[j] = digit;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.hbisoft.pinlockr;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Describes the key grid of {@link PinlockrView} and {@link PinlockrKeypadView}: the number of
+ * columns and which key sits in every cell, filled row by row.
+ * <p>
+ * Where the digits and the biometric and delete keys are is worked out once, when the layout is
+ * created, so binding, drawing and clicking a key only index into arrays. Use one of the
+ * predefined layouts, or create your own with every digit exactly once:
+ * <pre>
+ * new KeypadLayout(4,
+ *         1, 2, 3, KeypadLayout.KEY_DELETE,
+ *         4, 5, 6, KeypadLayout.KEY_CLEAR,
+ *         7, 8, 9, KeypadLayout.KEY_SUBMIT,
+ *         KeypadLayout.KEY_BIOMETRIC, 0, KeypadLayout.KEY_EMPTY, KeypadLayout.KEY_EMPTY);
+ * </pre>
+ */
+public final class KeypadLayout {
+
+    // The values of the keypadLayout attribute
+    @IntDef({AttrValue.PHONE, AttrValue.WIDE, AttrValue.EXTENDED})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface AttrValue {
+        int PHONE = 0;
+        int WIDE = 1;
+        int EXTENDED = 2;
+    }
+
+    // Keys other than the digits 0-9
+    public static final int KEY_BIOMETRIC = -1;
+    public static final int KEY_DELETE = -2;
+    // Reports the PIN again if it's complete
+    public static final int KEY_SUBMIT = -3;
+    // Wipes everything that was entered
+    public static final int KEY_CLEAR = -4;
+    // A blank cell
+    public static final int KEY_EMPTY = -5;
+
+    /**
+     * The classic phone keypad: 3 columns, with the biometric key left of 0 and delete right
+     * of it.
+     */
+    public static final KeypadLayout PHONE = new KeypadLayout(3,
+            1, 2, 3,
+            4, 5, 6,
+            7, 8, 9,
+            KEY_BIOMETRIC, 0, KEY_DELETE);
+
+    /**
+     * 4 columns and 3 rows, for landscape and tablets where height is short.
+     */
+    public static final KeypadLayout WIDE = new KeypadLayout(4,
+            1, 2, 3, KEY_BIOMETRIC,
+            4, 5, 6, 0,
+            7, 8, 9, KEY_DELETE);
+
+    /**
+     * The phone keypad with an extra row for clearing the entry and submitting it.
+     */
+    public static final KeypadLayout EXTENDED = new KeypadLayout(3,
+            1, 2, 3,
+            4, 5, 6,
+            7, 8, 9,
+            KEY_BIOMETRIC, 0, KEY_DELETE,
+            KEY_CLEAR, KEY_EMPTY, KEY_SUBMIT);
+
+    private static final int DIGIT_COUNT = 10;
+
+    /**
+     * The predefined layout for a value of the keypadLayout attribute, {@link #PHONE} for
+     * unknown values.
+     */
+    static KeypadLayout fromAttr(@AttrValue int value) {
+        switch (value) {
+            case AttrValue.WIDE:
+                return WIDE;
+            case AttrValue.EXTENDED:
+                return EXTENDED;
+            default:
+                return PHONE;
+        }
+    }
+
+    private final int mColumns;
+    private final int[] mKeys;
+    // The position of every digit cell, in grid order
+    private final int[] mDigitPositions = new int[DIGIT_COUNT];
+    private final int mBiometricPosition;
+    private final int mDeletePosition;
+
+    /**
+     * @param columns the number of columns
+     * @param keys    the key of every cell, row by row: the digits 0-9, each exactly once, and
+     *                any of the {@code KEY_} constants. There can be at most one biometric and
+     *                one delete key.
+     * @throws IllegalArgumentException if {@code keys} doesn't match the rules above
+     */
+    public KeypadLayout(int columns, int... keys) {
+        if (columns <= 0) {
+            throw new IllegalArgumentException("columns must be positive: " + columns);
+        }
+        mColumns = columns;
+        mKeys = keys.clone();
+
+        boolean[] seen = new boolean[DIGIT_COUNT];
+        int digits = 0;
+        int biometricPosition = -1;
+        int deletePosition = -1;
+        for (int position = 0; position < mKeys.length; position++) {
+            int key = mKeys[position];
+            if (key >= 0 && key < DIGIT_COUNT) {
+                if (seen[key]) {
+                    throw new IllegalArgumentException("Digit " + key + " appears more than once");
+                }
+                seen[key] = true;
+                mDigitPositions[digits++] = position;
+            } else if (key == KEY_BIOMETRIC) {
+                if (biometricPosition != -1) {
+                    throw new IllegalArgumentException("More than one biometric key");
+                }
+                biometricPosition = position;
+            } else if (key == KEY_DELETE) {
+                if (deletePosition != -1) {
+                    throw new IllegalArgumentException("More than one delete key");
+                }
+                deletePosition = position;
+            } else if (key != KEY_SUBMIT && key != KEY_CLEAR && key != KEY_EMPTY) {
+                throw new IllegalArgumentException("Unknown key " + key + " at " + position);
+            }
+        }
+        if (digits != DIGIT_COUNT) {
+            throw new IllegalArgumentException("Every digit 0-9 must appear once, found " + digits);
+        }
+        mBiometricPosition = biometricPosition;
+        mDeletePosition = deletePosition;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public int getRows() {
+        return (mKeys.length + mColumns - 1) / mColumns;
+    }
+
+    public int getKeyCount() {
+        return mKeys.length;
+    }
+
+    /**
+     * Returns the digit at {@code position}, or one of the {@code KEY_} constants.
+     */
+    public int getKey(int position) {
+        return mKeys[position];
+    }
+
+    /**
+     * Copies the keys into {@code out}, which must hold {@link #getKeyCount()} ints.
+     */
+    void copyKeys(int[] out) {
+        System.arraycopy(mKeys, 0, out, 0, mKeys.length);
+    }
+
+    /**
+     * Returns the position of the {@code index}th digit cell, counted row by row. Scrambling
+     * puts the shuffled digits into these cells.
+     */
+    int getDigitPosition(int index) {
+        return mDigitPositions[index];
+    }
+
+    /**
+     * Returns the position of the biometric key, -1 if there is none.
+     */
+    int getBiometricPosition() {
+        return mBiometricPosition;
+    }
+
+    /**
+     * Returns the position of the delete key, -1 if there is none.
+     */
+    int getDeletePosition() {
+        return mDeletePosition;
+    }
+}
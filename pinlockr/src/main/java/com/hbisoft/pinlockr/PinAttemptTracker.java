@@ -0,0 +1,293 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts failed PIN attempts across app restarts and locks the keypad out with an exponential
+ * backoff once too many fail in a row.
+ * <p>
+ * Attempts are appended to a journal of fixed-size records. Every record carries the number of
+ * consecutive failures at that point, so only the last record is read on start, however long the
+ * journal is. The journal is compacted to that last record once it grows past a few hundred
+ * records.
+ * <p>
+ * The journal is read on the library's background thread, and nothing waits for it. Until it's
+ * read, {@link #isLoaded()} is false and the lockout state is unknown: {@link #isLockedOut()}
+ * returns false, and attempts recorded in the meantime are counted on top of the journal once
+ * it's read. The listeners are called when that happens. After that the state is in memory, so
+ * checking it never touches the disk.
+ * <p>
+ * A running lockout is timed with the elapsed time since boot, so changing the device clock
+ * doesn't end it. The journal can only store the wall clock time of the last failure though, so
+ * after the app is restarted, a clock set forward in the meantime shortens the lockout.
+ * <p>
+ * Report the outcome of every check with {@link #recordFailure()} or {@link #recordSuccess()},
+ * and pass the tracker to {@link PinlockrView#setAttemptTracker(PinAttemptTracker)} to disable
+ * the keys while locked out.
+ */
+public class PinAttemptTracker {
+
+    public interface OnLockoutChangedListener {
+        /**
+         * Called after every recorded attempt on the thread that recorded it, and once the
+         * journal is loaded on the library's background thread.
+         */
+        void onLockoutChanged(@NonNull PinAttemptTracker tracker);
+    }
+
+    private static final String DEFAULT_FILE_NAME = "pinlockr_attempts";
+
+    // time, type, consecutive failures
+    static final int RECORD_SIZE = 8 + 4 + 4;
+    static final int COMPACT_THRESHOLD = 256;
+
+    private static final int TYPE_FAILURE = 1;
+    private static final int TYPE_SUCCESS = 2;
+
+    public static final int DEFAULT_FREE_ATTEMPTS = 5;
+    private static final long BASE_LOCKOUT_MILLIS = 30_000;
+    private static final long MAX_LOCKOUT_MILLIS = 60 * 60_000;
+
+    private final File mFile;
+    private final int mFreeAttempts;
+    private final LongSupplier mWallClock;
+    private final LongSupplier mElapsedClock;
+    private final Executor mExecutor;
+    private final List<OnLockoutChangedListener> mListeners = new CopyOnWriteArrayList<>();
+    // Only touched on the background executor
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    // Guards the state below
+    private final Object mLock = new Object();
+    private boolean mLoaded;
+    private int mConsecutiveFailures;
+    // On the elapsed clock
+    private long mLastFailureElapsed;
+    private int mRecordCount;
+    // Attempts recorded before the journal was read, as wall time, elapsed time and type
+    private final List<long[]> mPendingRecords = new ArrayList<>();
+
+    /**
+     * Keeps the journal in the app's no-backup directory and allows
+     * {@link #DEFAULT_FREE_ATTEMPTS} failures before the first lockout.
+     */
+    public PinAttemptTracker(@NonNull Context context) {
+        this(new File(context.getNoBackupFilesDir(), DEFAULT_FILE_NAME), DEFAULT_FREE_ATTEMPTS);
+    }
+
+    /**
+     * @param freeAttempts how many consecutive failures are allowed before the first lockout
+     */
+    public PinAttemptTracker(@NonNull File file, int freeAttempts) {
+        this(file, freeAttempts, System::currentTimeMillis, SystemClock::elapsedRealtime, PinlockrExecutors.background());
+    }
+
+    PinAttemptTracker(File file, int freeAttempts, LongSupplier wallClock, LongSupplier elapsedClock, Executor executor) {
+        if (freeAttempts < 1) {
+            throw new IllegalArgumentException("freeAttempts must be at least 1: " + freeAttempts);
+        }
+        mFile = file;
+        mFreeAttempts = freeAttempts;
+        mWallClock = wallClock;
+        mElapsedClock = elapsedClock;
+        mExecutor = executor;
+        mExecutor.execute(this::loadFromDisk);
+    }
+
+    /**
+     * Records a wrong PIN. Listeners are called before this returns, on the calling thread.
+     */
+    public void recordFailure() {
+        record(TYPE_FAILURE);
+    }
+
+    /**
+     * Records a correct PIN, which ends any lockout and resets the failure count.
+     */
+    public void recordSuccess() {
+        record(TYPE_SUCCESS);
+    }
+
+    /**
+     * Returns true once the journal is read. Until then the lockout state is unknown.
+     */
+    public boolean isLoaded() {
+        synchronized (mLock) {
+            return mLoaded;
+        }
+    }
+
+    public boolean isLockedOut() {
+        return remainingLockout() > 0;
+    }
+
+    /**
+     * Milliseconds until the current lockout ends, or 0 if there is none or the journal isn't
+     * loaded yet.
+     */
+    public long remainingLockout() {
+        synchronized (mLock) {
+            long lockout = lockoutMillis(mConsecutiveFailures, mFreeAttempts);
+            if (lockout == 0) {
+                return 0;
+            }
+            long elapsed = mElapsedClock.getAsLong() - mLastFailureElapsed;
+            return Math.max(0, lockout - Math.max(0, elapsed));
+        }
+    }
+
+    /**
+     * Failed attempts since the last successful one, 0 until the journal is loaded.
+     */
+    public int getFailedAttempts() {
+        synchronized (mLock) {
+            return mConsecutiveFailures;
+        }
+    }
+
+    public void addOnLockoutChangedListener(@NonNull OnLockoutChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnLockoutChangedListener(@NonNull OnLockoutChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * The lockout after {@code failures} consecutive failures: none for the free attempts, then
+     * 30 seconds, doubling with every further failure up to an hour.
+     */
+    static long lockoutMillis(int failures, int freeAttempts) {
+        if (failures < freeAttempts) {
+            return 0;
+        }
+        int doublings = failures - freeAttempts;
+        if (doublings >= 32) {
+            return MAX_LOCKOUT_MILLIS;
+        }
+        return Math.min(MAX_LOCKOUT_MILLIS, BASE_LOCKOUT_MILLIS << doublings);
+    }
+
+    private void record(int type) {
+        long now = mWallClock.getAsLong();
+        long elapsedNow = mElapsedClock.getAsLong();
+        synchronized (mLock) {
+            if (mLoaded) {
+                applyRecord(now, elapsedNow, type);
+            } else {
+                mPendingRecords.add(new long[]{now, elapsedNow, type});
+            }
+        }
+        notifyListeners();
+    }
+
+    // Called with mLock held, once the journal is loaded
+    private void applyRecord(long now, long elapsedNow, int type) {
+        if (type == TYPE_FAILURE) {
+            mConsecutiveFailures++;
+            mLastFailureElapsed = elapsedNow;
+        } else {
+            mConsecutiveFailures = 0;
+        }
+        int failures = mConsecutiveFailures;
+        mRecordCount++;
+        boolean compact = mRecordCount >= COMPACT_THRESHOLD;
+        if (compact) {
+            mRecordCount = 1;
+        }
+        mExecutor.execute(() -> writeRecord(now, type, failures, compact));
+    }
+
+    private void notifyListeners() {
+        for (OnLockoutChangedListener listener : mListeners) {
+            listener.onLockoutChanged(this);
+        }
+    }
+
+    private void loadFromDisk() {
+        int failures = 0;
+        long lastFailure = 0;
+        int recordCount = 0;
+        if (mFile.exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+                // A record torn by a crash mid-write is ignored
+                recordCount = (int) (file.length() / RECORD_SIZE);
+                if (recordCount > 0) {
+                    file.seek((long) (recordCount - 1) * RECORD_SIZE);
+                    long time = file.readLong();
+                    int type = file.readInt();
+                    failures = Math.max(0, file.readInt());
+                    // The last failure is the last record when the streak is still going
+                    lastFailure = type == TYPE_FAILURE ? time : 0;
+                }
+            } catch (IOException e) {
+                recordCount = 0;
+                failures = 0;
+            }
+        }
+
+        synchronized (mLock) {
+            mConsecutiveFailures = failures;
+            // Moved onto the elapsed clock, so changing the device clock from now on doesn't
+            // affect the lockout. A clock set back can't make it longer than it was.
+            long elapsedNow = mElapsedClock.getAsLong();
+            mLastFailureElapsed = elapsedNow - Math.max(0, mWallClock.getAsLong() - lastFailure);
+            mRecordCount = recordCount;
+            mLoaded = true;
+            for (long[] record : mPendingRecords) {
+                applyRecord(record[0], record[1], (int) record[2]);
+            }
+            mPendingRecords.clear();
+        }
+        notifyListeners();
+    }
+
+    private void writeRecord(long time, int type, int failures, boolean compact) {
+        mRecord.clear();
+        mRecord.putLong(time).putInt(type).putInt(failures);
+        if (compact && replaceJournal()) {
+            return;
+        }
+        // Also when compacting failed, so the attempt is still kept
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            long length = file.length();
+            // Drop a torn record before appending, so records stay aligned
+            file.seek(length - length % RECORD_SIZE);
+            file.write(mRecord.array(), 0, RECORD_SIZE);
+            file.getFD().sync();
+        } catch (IOException e) {
+            // The in-memory state is still correct, only a restart would lose this attempt
+        }
+    }
+
+    // The last record holds everything needed, so it replaces the whole journal
+    private boolean replaceJournal() {
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            file.write(mRecord.array(), 0, RECORD_SIZE);
+            file.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+}
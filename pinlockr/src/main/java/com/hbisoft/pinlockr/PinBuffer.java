@@ -0,0 +1,107 @@
+package com.hbisoft.pinlockr;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity buffer holding the digits of the PIN being entered.
+ * <p>
+ * Appending and deleting are O(1) and never allocate, and {@link #clear()} overwrites the
+ * backing array so no copy of the secret is left behind on the heap. The buffer is handed to
+ * {@link PinlockrListener#onComplete(CharSequence)} as-is, so it is only valid for the
+ * duration of that callback; copy it if you need to keep it.
+ */
+public final class PinBuffer implements CharSequence {
+
+    private char[] mDigits;
+    private int mLength;
+
+    public PinBuffer(int capacity) {
+        mDigits = new char[Math.max(capacity, 0)];
+    }
+
+    /**
+     * Changes the capacity of the buffer. The current content is wiped.
+     */
+    public void setCapacity(int capacity) {
+        clear();
+        if (capacity != mDigits.length) {
+            mDigits = new char[Math.max(capacity, 0)];
+        }
+    }
+
+    public int getCapacity() {
+        return mDigits.length;
+    }
+
+    public boolean isFull() {
+        return mLength == mDigits.length;
+    }
+
+    public boolean isEmpty() {
+        return mLength == 0;
+    }
+
+    /**
+     * Appends a single digit, returns false if the buffer is already full.
+     */
+    public boolean append(int digit) {
+        if (mLength >= mDigits.length) {
+            return false;
+        }
+        mDigits[mLength++] = (char) ('0' + digit);
+        return true;
+    }
+
+    /**
+     * Removes the last digit, returns false if the buffer is already empty.
+     */
+    public boolean delete() {
+        if (mLength == 0) {
+            return false;
+        }
+        mDigits[--mLength] = 0;
+        return true;
+    }
+
+    /**
+     * Removes and wipes every digit.
+     */
+    public void clear() {
+        Arrays.fill(mDigits, (char) 0);
+        mLength = 0;
+    }
+
+    /**
+     * Returns a copy of the entered digits. The caller owns the copy and should wipe it with
+     * {@link Arrays#fill(char[], char)} once it is no longer needed.
+     */
+    public char[] toCharArray() {
+        return Arrays.copyOf(mDigits, mLength);
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + mLength);
+        }
+        return mDigits[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + mLength);
+        }
+        return new String(mDigits, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mDigits, 0, mLength);
+    }
+}
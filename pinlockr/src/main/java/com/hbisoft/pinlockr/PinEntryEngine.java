@@ -0,0 +1,169 @@
+package com.hbisoft.pinlockr;
+
+/**
+ * The PIN entry state machine behind {@link PinlockrView} and {@link PinlockrKeypadView}.
+ * <p>
+ * It has no Android dependencies. Every operation updates a {@link PinBuffer} and reports what
+ * changed through {@link Listener#onEntryChanged(int, int)}, which the views apply to their dots
+ * and delete key. Nothing is allocated after construction, unless the PIN length changes.
+ */
+public final class PinEntryEngine {
+
+    // The number of entered digits changed
+    public static final int CHANGED_LENGTH = 1;
+    // The entry went from empty to non-empty or back, which shows or hides the delete key
+    public static final int CHANGED_HAS_INPUT = 1 << 1;
+
+    public interface Listener {
+
+        /**
+         * @param changes a combination of {@link #CHANGED_LENGTH} and {@link #CHANGED_HAS_INPUT}
+         * @param length  the number of digits entered now
+         */
+        void onEntryChanged(int changes, int length);
+
+        /**
+         * Called when a digit completes the PIN, or a digit is entered while the PIN is already
+         * complete and auto reset is off. {@code pin} is only valid during this call.
+         */
+        void onComplete(CharSequence pin);
+    }
+
+    private final PinBuffer mPin;
+    private boolean mAutoReset;
+    private Listener mListener;
+
+    public PinEntryEngine(int pinLength) {
+        mPin = new PinBuffer(pinLength);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Changes the PIN length. Whatever was entered is wiped.
+     */
+    public void setPinLength(int pinLength) {
+        int previousLength = mPin.length();
+        mPin.setCapacity(pinLength);
+        dispatchChanged(previousLength);
+    }
+
+    public int getPinLength() {
+        return mPin.getCapacity();
+    }
+
+    /**
+     * When set, a digit entered after the PIN is complete starts a new entry instead of
+     * reporting the complete PIN again. {@link PinlockrView} does this when the delete key is
+     * hidden, since there is no other way to correct the entry.
+     */
+    public void setAutoReset(boolean autoReset) {
+        mAutoReset = autoReset;
+    }
+
+    public boolean isAutoReset() {
+        return mAutoReset;
+    }
+
+    public void appendDigit(int digit) {
+        int previousLength = mPin.length();
+        if (!mPin.isFull()) {
+            mPin.append(digit);
+            dispatchChanged(previousLength);
+            if (mPin.isFull()) {
+                dispatchComplete();
+            }
+        } else if (mAutoReset) {
+            mPin.clear();
+            mPin.append(digit);
+            dispatchChanged(previousLength);
+        } else {
+            dispatchComplete();
+        }
+    }
+
+    public void delete() {
+        int previousLength = mPin.length();
+        if (mPin.delete()) {
+            dispatchChanged(previousLength);
+        }
+    }
+
+    /**
+     * Reports the PIN again if it's complete, e.g. when Enter is pressed on a hardware keyboard.
+     *
+     * @return false if the PIN isn't complete yet
+     */
+    public boolean submit() {
+        if (!mPin.isFull()) {
+            return false;
+        }
+        dispatchComplete();
+        return true;
+    }
+
+    /**
+     * Wipes the entered digits.
+     */
+    public void reset() {
+        int previousLength = mPin.length();
+        mPin.clear();
+        dispatchChanged(previousLength);
+    }
+
+    public int length() {
+        return mPin.length();
+    }
+
+    /**
+     * Returns the entry masked for saved instance state, or null if nothing was entered.
+     *
+     * @see EntryMask
+     */
+    byte[] saveEntry() {
+        return EntryMask.mask(mPin);
+    }
+
+    /**
+     * Replaces the entry with one saved by {@link #saveEntry()}, without reporting it as
+     * complete even if it's full. {@code saved} is wiped.
+     *
+     * @return false if {@code saved} couldn't be restored, in which case the entry is empty
+     */
+    boolean restoreEntry(byte[] saved) {
+        int previousLength = mPin.length();
+        mPin.clear();
+        boolean restored = EntryMask.unmask(saved, mPin);
+        dispatchChanged(previousLength);
+        return restored;
+    }
+
+    /**
+     * The live entry buffer. It's wiped on {@link #reset()}, so don't keep it around.
+     */
+    public PinBuffer getPin() {
+        return mPin;
+    }
+
+    private void dispatchChanged(int previousLength) {
+        int length = mPin.length();
+        int changes = 0;
+        if (length != previousLength) {
+            changes |= CHANGED_LENGTH;
+        }
+        if ((length == 0) != (previousLength == 0)) {
+            changes |= CHANGED_HAS_INPUT;
+        }
+        if (changes != 0 && mListener != null) {
+            mListener.onEntryChanged(changes, length);
+        }
+    }
+
+    private void dispatchComplete() {
+        if (mListener != null) {
+            mListener.onComplete(mPin);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hbisoft.pinlockr;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.customview.view.AbsSavedState;
+
+/**
+ * Saved state of {@link PinlockrView} and {@link PinlockrKeypadView}: the entry masked by
+ * {@link EntryMask}, never the digits themselves.
+ */
+final class PinEntrySavedState extends AbsSavedState {
+
+    // Null when nothing was entered
+    byte[] mEntry;
+
+    PinEntrySavedState(@NonNull Parcelable superState) {
+        super(superState);
+    }
+
+    private PinEntrySavedState(@NonNull Parcel source, @Nullable ClassLoader loader) {
+        super(source, loader);
+        mEntry = source.createByteArray();
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        super.writeToParcel(dest, flags);
+        dest.writeByteArray(mEntry);
+    }
+
+    public static final Creator<PinEntrySavedState> CREATOR = new ClassLoaderCreator<PinEntrySavedState>() {
+        @Override
+        public PinEntrySavedState createFromParcel(Parcel source, ClassLoader loader) {
+            return new PinEntrySavedState(source, loader);
+        }
+
+        @Override
+        public PinEntrySavedState createFromParcel(Parcel source) {
+            return new PinEntrySavedState(source, null);
+        }
+
+        @Override
+        public PinEntrySavedState[] newArray(int size) {
+            return new PinEntrySavedState[size];
+        }
+    };
+}
@@ -0,0 +1,329 @@
+package com.hbisoft.pinlockr;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 hashing of PINs, done on a background thread.
+ * <p>
+ * {@link #hash(CharSequence, Executor, Callback)} returns a verifier: a small byte array that
+ * holds the algorithm, iteration count, salt and hash. Store it instead of the PIN and check
+ * entries against it with {@link #verify(CharSequence, byte[], Executor, Callback)}.
+ * <p>
+ * The iteration count is calibrated once per device, so that hashing takes about the target
+ * duration (150 ms by default), and kept in the calibration file. Pass a file in
+ * {@code Context.getNoBackupFilesDir()}, since the result is only valid for the device that
+ * measured it.
+ */
+public final class PinHasher {
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public static final long DEFAULT_TARGET_MILLIS = 150;
+
+    static final int MIN_ITERATIONS = 10_000;
+    static final int MAX_ITERATIONS = 5_000_000;
+    // A verifier may be this many times slower to check than a new hash, e.g. after the target
+    // was lowered. More than that means it was tampered with to tie up the hashing thread.
+    static final int MAX_ITERATION_FACTOR = 8;
+
+    private static final int PROBE_ITERATIONS = 10_000;
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH_BITS = 256;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int CALIBRATION_VERSION = 1;
+
+    private static final int ALGORITHM_SHA256 = 1;
+    private static final int ALGORITHM_SHA1 = 2;
+
+    // version, algorithm, iterations, salt, hash
+    private static final int HEADER_LENGTH = 1 + 1 + 4 + SALT_LENGTH;
+    private static final int VERIFIER_LENGTH = HEADER_LENGTH + KEY_LENGTH_BITS / 8;
+
+    private static final SecureRandom sRandom = new SecureRandom();
+    private static int sDefaultAlgorithm;
+
+    private final File mCalibrationFile;
+    private final long mTargetMillis;
+    private final Executor mExecutor;
+    private int mIterations;
+
+    /**
+     * Hashes with the iteration count calibrated for {@link #DEFAULT_TARGET_MILLIS}.
+     */
+    public PinHasher(File calibrationFile) {
+        this(calibrationFile, DEFAULT_TARGET_MILLIS);
+    }
+
+    /**
+     * Hashes with the iteration count calibrated for {@code targetMillis}. The calibration is done
+     * the first time it's needed, or ahead of time with {@link #calibrate(Executor, Callback)}.
+     */
+    public PinHasher(File calibrationFile, long targetMillis) {
+        if (targetMillis <= 0) {
+            throw new IllegalArgumentException("targetMillis must be positive: " + targetMillis);
+        }
+        mCalibrationFile = calibrationFile;
+        mTargetMillis = targetMillis;
+        mExecutor = PinlockrExecutors.kdf();
+    }
+
+    /**
+     * Hashes with a fixed iteration count and never calibrates.
+     */
+    public PinHasher(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+        mCalibrationFile = null;
+        mTargetMillis = 0;
+        mExecutor = PinlockrExecutors.kdf();
+        mIterations = iterations;
+    }
+
+    /**
+     * Loads the persisted calibration, or measures this device if there is none, and reports the
+     * resulting iteration count on {@code callbackExecutor}. Call it early, e.g. at app start,
+     * so the first {@link #hash} doesn't have to wait for it.
+     */
+    public void calibrate(Executor callbackExecutor, Callback<Integer> callback) {
+        mExecutor.execute(() -> {
+            int iterations = getIterations();
+            if (callback != null) {
+                callbackExecutor.execute(() -> callback.onResult(iterations));
+            }
+        });
+    }
+
+    /**
+     * Hashes {@code pin} with a new random salt and reports the verifier on
+     * {@code callbackExecutor}. The digits are copied before this returns, so it's safe to pass
+     * the buffer from {@link PinlockrListener#onComplete(CharSequence)}.
+     */
+    public void hash(CharSequence pin, Executor callbackExecutor, Callback<byte[]> callback) {
+        char[] digits = toCharArray(pin);
+        mExecutor.execute(() -> {
+            byte[] verifier;
+            try {
+                verifier = hash(digits);
+            } finally {
+                Arrays.fill(digits, '\0');
+            }
+            callbackExecutor.execute(() -> callback.onResult(verifier));
+        });
+    }
+
+    /**
+     * Checks {@code pin} against a verifier from {@link #hash} and reports whether it matches on
+     * {@code callbackExecutor}. A malformed verifier never matches, and neither does one that
+     * asks for more than {@link #MAX_ITERATION_FACTOR} times the current iteration count.
+     */
+    public void verify(CharSequence pin, byte[] verifier, Executor callbackExecutor, Callback<Boolean> callback) {
+        char[] digits = toCharArray(pin);
+        mExecutor.execute(() -> {
+            boolean matches;
+            try {
+                matches = verify(digits, verifier);
+            } finally {
+                Arrays.fill(digits, '\0');
+            }
+            callbackExecutor.execute(() -> callback.onResult(matches));
+        });
+    }
+
+    /**
+     * Returns true if {@code verifier} was made with fewer iterations or a weaker algorithm than
+     * this hasher uses now, in which case it's worth hashing the PIN again after a successful
+     * {@link #verify}. Reads the calibration, so call it off the main thread.
+     */
+    public boolean needsRehash(byte[] verifier) {
+        if (!isWellFormed(verifier)) {
+            return true;
+        }
+        return verifier[1] != defaultAlgorithm() || readInt(verifier, 2) < getIterations();
+    }
+
+    byte[] hash(char[] pin) {
+        int algorithm = defaultAlgorithm();
+        int iterations = getIterations();
+        byte[] salt = new byte[SALT_LENGTH];
+        sRandom.nextBytes(salt);
+
+        byte[] verifier = new byte[VERIFIER_LENGTH];
+        verifier[0] = FORMAT_VERSION;
+        verifier[1] = (byte) algorithm;
+        writeInt(verifier, 2, iterations);
+        System.arraycopy(salt, 0, verifier, 6, SALT_LENGTH);
+        byte[] key = derive(algorithm, pin, salt, iterations);
+        System.arraycopy(key, 0, verifier, HEADER_LENGTH, key.length);
+        Arrays.fill(key, (byte) 0);
+        return verifier;
+    }
+
+    boolean verify(char[] pin, byte[] verifier) {
+        if (!isWellFormed(verifier)) {
+            return false;
+        }
+        int algorithm = verifier[1];
+        int iterations = readInt(verifier, 2);
+        if ((long) iterations > (long) getIterations() * MAX_ITERATION_FACTOR) {
+            return false;
+        }
+        byte[] salt = Arrays.copyOfRange(verifier, 6, HEADER_LENGTH);
+        byte[] expected = Arrays.copyOfRange(verifier, HEADER_LENGTH, VERIFIER_LENGTH);
+        byte[] key = derive(algorithm, pin, salt, iterations);
+        boolean matches = MessageDigest.isEqual(key, expected);
+        Arrays.fill(key, (byte) 0);
+        return matches;
+    }
+
+    /**
+     * The iteration count new hashes use, calibrating first if needed. Blocks for the duration of
+     * the calibration, so only call it off the main thread.
+     */
+    synchronized int getIterations() {
+        if (mIterations == 0) {
+            int iterations = readCalibration();
+            if (iterations == 0) {
+                iterations = measureIterations();
+                writeCalibration(iterations);
+            }
+            mIterations = iterations;
+        }
+        return mIterations;
+    }
+
+    private int measureIterations() {
+        int algorithm = defaultAlgorithm();
+        char[] probe = {'0', '0', '0', '0'};
+        byte[] salt = new byte[SALT_LENGTH];
+        // The first run includes class loading and JIT warmup, so only the second one is measured
+        derive(algorithm, probe, salt, PROBE_ITERATIONS);
+        long start = System.nanoTime();
+        derive(algorithm, probe, salt, PROBE_ITERATIONS);
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+        long iterations = PROBE_ITERATIONS * (mTargetMillis * 1_000_000L) / elapsedNanos;
+        iterations = iterations / 1000 * 1000;
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+    }
+
+    private int readCalibration() {
+        if (mCalibrationFile == null || !mCalibrationFile.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mCalibrationFile))) {
+            if (in.readInt() != CALIBRATION_VERSION
+                    || in.readLong() != mTargetMillis
+                    || in.readInt() != defaultAlgorithm()) {
+                return 0;
+            }
+            int iterations = in.readInt();
+            return iterations >= MIN_ITERATIONS && iterations <= MAX_ITERATIONS ? iterations : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void writeCalibration(int iterations) {
+        if (mCalibrationFile == null) {
+            return;
+        }
+        // Written next to the file and renamed over it, so a crash never leaves half a file
+        File temp = new File(mCalibrationFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeInt(CALIBRATION_VERSION);
+            out.writeLong(mTargetMillis);
+            out.writeInt(defaultAlgorithm());
+            out.writeInt(iterations);
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            // Not fatal, the device is measured again next time
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(mCalibrationFile)) {
+            temp.delete();
+        }
+    }
+
+    private static byte[] derive(int algorithm, char[] pin, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(pin, salt, iterations, KEY_LENGTH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(algorithmName(algorithm)).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static synchronized int defaultAlgorithm() {
+        if (sDefaultAlgorithm == 0) {
+            // PBKDF2WithHmacSHA256 is only available from API 26
+            try {
+                SecretKeyFactory.getInstance(algorithmName(ALGORITHM_SHA256));
+                sDefaultAlgorithm = ALGORITHM_SHA256;
+            } catch (NoSuchAlgorithmException e) {
+                sDefaultAlgorithm = ALGORITHM_SHA1;
+            }
+        }
+        return sDefaultAlgorithm;
+    }
+
+    private static String algorithmName(int algorithm) {
+        return algorithm == ALGORITHM_SHA256 ? "PBKDF2WithHmacSHA256" : "PBKDF2WithHmacSHA1";
+    }
+
+    private static boolean isWellFormed(byte[] verifier) {
+        return verifier != null
+                && verifier.length == VERIFIER_LENGTH
+                && verifier[0] == FORMAT_VERSION
+                && (verifier[1] == ALGORITHM_SHA256 || verifier[1] == ALGORITHM_SHA1)
+                && readInt(verifier, 2) > 0
+                && readInt(verifier, 2) <= MAX_ITERATIONS;
+    }
+
+    private static char[] toCharArray(CharSequence pin) {
+        if (pin instanceof PinBuffer) {
+            return ((PinBuffer) pin).toCharArray();
+        }
+        char[] digits = new char[pin.length()];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = pin.charAt(i);
+        }
+        return digits;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24
+                | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8
+                | (bytes[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,78 @@
+package com.hbisoft.pinlockr;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Storage for the PIN verifier from {@link PinHasher} and a few values that go with it, such as
+ * when the PIN was set.
+ * <p>
+ * Reads are answered from memory and never wait for the disk. Changes are made through an
+ * {@link Editor}, so a new verifier and its metadata are written together.
+ */
+public interface PinStore {
+
+    interface OnLoadedListener {
+        void onLoaded(@NonNull PinStore store);
+    }
+
+    /**
+     * Calls {@code listener} on {@code callbackExecutor} once the stored values are in memory,
+     * right away if they already are. Read the values from there.
+     */
+    void load(@NonNull Executor callbackExecutor, @NonNull OnLoadedListener listener);
+
+    /**
+     * Returns true once the stored values are in memory. Until then, the getters never block,
+     * they only see the edits applied so far.
+     */
+    boolean isLoaded();
+
+    /**
+     * Returns a copy of the stored verifier, or null if no PIN is set or the store isn't loaded
+     * yet.
+     */
+    @Nullable
+    byte[] getVerifier();
+
+    boolean hasPin();
+
+    long getLong(@NonNull String key, long defaultValue);
+
+    @NonNull
+    Editor edit();
+
+    interface Editor {
+
+        @NonNull
+        Editor putVerifier(@Nullable byte[] verifier);
+
+        @NonNull
+        Editor putLong(@NonNull String key, long value);
+
+        @NonNull
+        Editor remove(@NonNull String key);
+
+        /**
+         * Removes the verifier and every value. Applied before the other changes in this edit.
+         */
+        @NonNull
+        Editor clear();
+
+        /**
+         * Updates memory right away and writes to disk in the background, without waiting for
+         * the store to load. Edits applied in quick succession are written together.
+         */
+        void apply();
+
+        /**
+         * Updates memory and writes to disk before returning, reading the store first if it
+         * isn't loaded yet. Don't call it on the main thread.
+         *
+         * @return true if the write succeeded
+         */
+        boolean commit();
+    }
+}
@@ -3,156 +3,463 @@ package com.hbisoft.pinlockr;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.TypedValue;
-import android.view.LayoutInflater;
+import android.view.Gravity;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 
+import androidx.annotation.DimenRes;
+import androidx.annotation.DrawableRes;
+import androidx.appcompat.widget.AppCompatButton;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.List;
+
 public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     private static final int VIEW_TYPE_NUMBER = 0;
 
     private static final int VIEW_TYPE_BIOMETRIC = 2;
     private static final int VIEW_TYPE_DELETE = 1;
+    // Submit and clear
+    private static final int VIEW_TYPE_ACTION = 3;
+    private static final int VIEW_TYPE_EMPTY = 4;
+
+    // Change payloads passed to notifyItemChanged, so a setter only rebinds what it changed
+    static final int PAYLOAD_COLOR = 1;
+    static final int PAYLOAD_SIZE = 1 << 1;
+    static final int PAYLOAD_DRAWABLE = 1 << 2;
+    static final int PAYLOAD_VISIBILITY = 1 << 3;
+    static final int PAYLOAD_ENABLED = 1 << 4;
+    static final int PAYLOAD_KEYS = 1 << 5;
+    private static final int PAYLOAD_ALL = PAYLOAD_COLOR | PAYLOAD_SIZE | PAYLOAD_DRAWABLE | PAYLOAD_VISIBILITY | PAYLOAD_ENABLED | PAYLOAD_KEYS;
+
+    private static final String[] DIGIT_LABELS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
+
+    private static final float DISABLED_KEY_ALPHA = 0.4f;
 
     private Context mContext;
+    // Builds the key views instead of the RecyclerView's context, see setViewContext
+    private Context mViewContext;
     private CustomizationOptionsBundle mCustomizationOptionsBundle;
     private OnNumberClickListener mOnNumberClickListener;
     private OnDeleteClickListener mOnDeleteClickListener;
 
     private OnBiometricClickListener mOnBiometricClickListener;
+    private OnActionClickListener mOnActionClickListener;
     private int mPinLength;
 
-    private int[] mKeyValues;
+    private KeypadLayout mLayout = KeypadLayout.PHONE;
+    // The layout's keys, with the digits shuffled while scrambling
+    private int[] mKeyValues = new int[mLayout.getKeyCount()];
+    private boolean mKeysEnabled = true;
+
+    private PinlockrMetrics mMetrics;
+    private long mLastKeyUpTimeNanos;
+    private KeyFeedback mKeyFeedback;
 
     public PinlockrAdapter(Context context) {
         this.mContext = context;
-        this.mKeyValues = getAdjustKeyValues(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 0});
+        mLayout.copyKeys(mKeyValues);
     }
 
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         RecyclerView.ViewHolder viewHolder;
-        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        Context context = mViewContext != null ? mViewContext : parent.getContext();
 
         if (viewType == VIEW_TYPE_NUMBER) {
-            View view = inflater.inflate(R.layout.layout_number_item, parent, false);
-            viewHolder = new NumberViewHolder(view);
+            viewHolder = new NumberViewHolder(createNumberItem(context));
         } else if (viewType == VIEW_TYPE_BIOMETRIC) {
-            View view = inflater.inflate(R.layout.layout_fingerprint_item, parent, false);
-            viewHolder = new BiometricViewHolder(view);
+            viewHolder = new BiometricViewHolder(createImageItem(context,
+                    R.dimen.biometric_item_size, ViewGroup.LayoutParams.MATCH_PARENT, R.drawable.ic_fingerprint));
+        } else if (viewType == VIEW_TYPE_ACTION) {
+            // The icon is set when it's bound, since the holder can be reused for either action
+            viewHolder = new ActionViewHolder(createImageItem(context,
+                    R.dimen.key_item_size, (int) ResourceUtils.getDimensionInPx(context, R.dimen.default_delete_button_size), R.drawable.ic_submit));
+        } else if (viewType == VIEW_TYPE_EMPTY) {
+            int size = (int) ResourceUtils.getDimensionInPx(context, R.dimen.key_item_size);
+            View space = new View(context);
+            space.setLayoutParams(new ViewGroup.LayoutParams(size, size));
+            viewHolder = new KeyViewHolder(space);
         } else {
-            View view = inflater.inflate(R.layout.layout_delete_item, parent, false);
-            viewHolder = new DeleteViewHolder(view);
+            viewHolder = new DeleteViewHolder(createImageItem(context,
+                    R.dimen.key_item_size, (int) ResourceUtils.getDimensionInPx(context, R.dimen.default_delete_button_size), R.drawable.ic_backspace));
         }
         return viewHolder;
     }
 
+    // The key views are built in code rather than inflated, so creating them doesn't parse XML
+    // and can safely happen off the UI thread (see PinlockrView#prewarm)
+    private static View createNumberItem(Context context) {
+        int size = (int) ResourceUtils.getDimensionInPx(context, R.dimen.key_item_size);
+        AppCompatButton button = new AppCompatButton(context);
+        button.setLayoutParams(new ViewGroup.LayoutParams(size, size));
+        button.setPadding(0, 0, 0, 0);
+        button.setStateListAnimator(null);
+        TypedValue background = new TypedValue();
+        if (context.getTheme().resolveAttribute(android.R.attr.selectableItemBackground, background, true)) {
+            button.setBackground(ResourceUtils.getDrawable(context, background.resourceId));
+        }
+        return button;
+    }
+
+    private static View createImageItem(Context context, @DimenRes int itemSize, int imageSize, @DrawableRes int image) {
+        int size = (int) ResourceUtils.getDimensionInPx(context, itemSize);
+        LinearLayout button = new LinearLayout(context);
+        button.setLayoutParams(new ViewGroup.LayoutParams(size, size));
+        button.setGravity(Gravity.CENTER);
+        button.setClickable(true);
+
+        ImageView buttonImage = new ImageView(context);
+        buttonImage.setAdjustViewBounds(true);
+        buttonImage.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        buttonImage.setImageResource(image);
+        button.addView(buttonImage, new LinearLayout.LayoutParams(imageSize, imageSize));
+        return button;
+    }
+
+    static void configurePool(RecyclerView.RecycledViewPool pool, int keypadCount) {
+        pool.setMaxRecycledViews(VIEW_TYPE_NUMBER, 10 * keypadCount);
+        pool.setMaxRecycledViews(VIEW_TYPE_BIOMETRIC, keypadCount);
+        pool.setMaxRecycledViews(VIEW_TYPE_DELETE, keypadCount);
+        pool.setMaxRecycledViews(VIEW_TYPE_ACTION, 2 * keypadCount);
+        pool.setMaxRecycledViews(VIEW_TYPE_EMPTY, keypadCount);
+    }
+
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        bindViewHolder(holder, position, PAYLOAD_ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            bindViewHolder(holder, position, PAYLOAD_ALL);
+            return;
+        }
+        int changes = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            Object payload = payloads.get(i);
+            changes |= payload instanceof Integer ? (Integer) payload : PAYLOAD_ALL;
+        }
+        bindViewHolder(holder, position, changes);
+    }
+
+    private void bindViewHolder(RecyclerView.ViewHolder holder, int position, int changes) {
+        long start = mMetrics != null ? System.nanoTime() : 0;
+        ((KeyViewHolder) holder).mAdapter = this;
         if (holder.getItemViewType() == VIEW_TYPE_NUMBER) {
             NumberViewHolder vh1 = (NumberViewHolder) holder;
-            configureNumberButtonHolder(vh1, position);
+            configureNumberButtonHolder(vh1, position, changes);
         } else if (holder.getItemViewType() == VIEW_TYPE_BIOMETRIC) {
             BiometricViewHolder vh2 = (BiometricViewHolder) holder;
-            configureBiometricButtonHolder(vh2);
+            configureBiometricButtonHolder(vh2, changes);
         } else if (holder.getItemViewType() == VIEW_TYPE_DELETE) {
             DeleteViewHolder vh3 = (DeleteViewHolder) holder;
-            configureDeleteButtonHolder(vh3);
+            configureDeleteButtonHolder(vh3, changes);
+        } else if (holder.getItemViewType() == VIEW_TYPE_ACTION) {
+            ActionViewHolder vh4 = (ActionViewHolder) holder;
+            configureActionButtonHolder(vh4, position, changes);
+        }
+        if ((changes & PAYLOAD_ENABLED) != 0) {
+            holder.itemView.setEnabled(mKeysEnabled);
+            holder.itemView.setAlpha(mKeysEnabled ? 1f : DISABLED_KEY_ALPHA);
+        }
+        if (mMetrics != null) {
+            mMetrics.onMetric(PinlockrMetrics.BIND_COST, System.nanoTime() - start);
         }
     }
 
-    private void configureNumberButtonHolder(NumberViewHolder holder, int position) {
+    private void configureNumberButtonHolder(NumberViewHolder holder, int position, int changes) {
         if (holder != null) {
-            if (position == 9) {
-                //holder.mNumberButton.setVisibility(View.VISIBLE);
-            } else {
-                holder.mNumberButton.setText(String.valueOf(mKeyValues[position]));
+            if ((changes & PAYLOAD_KEYS) != 0) {
+                // The button has a fixed size, so a new label only redraws it
+                holder.mNumberButton.setText(DIGIT_LABELS[mKeyValues[position]]);
+                holder.mKeyValue = mKeyValues[position];
+            }
+            if ((changes & PAYLOAD_VISIBILITY) != 0) {
                 holder.mNumberButton.setVisibility(View.VISIBLE);
-                holder.mNumberButton.setTag(mKeyValues[position]);
             }
 
             if (mCustomizationOptionsBundle != null) {
-                holder.mNumberButton.setTextColor(mCustomizationOptionsBundle.getTextColor());
-                if (mCustomizationOptionsBundle.getButtonBackgroundDrawable() != null) {
-                    holder.mNumberButton.setBackground(
-                            mCustomizationOptionsBundle.getButtonBackgroundDrawable());
+                if ((changes & PAYLOAD_COLOR) != 0) {
+                    holder.mNumberButton.setTextColor(mCustomizationOptionsBundle.getTextColor());
+                }
+                if ((changes & PAYLOAD_DRAWABLE) != 0) {
+                    Drawable background = mCustomizationOptionsBundle.getButtonBackgroundDrawable();
+                    if (background == null) {
+                        // A shared holder can still have the background of another keypad
+                        background = holder.mDefaultBackground;
+                    }
+                    if (holder.mNumberButton.getBackground() != background) {
+                        holder.mNumberButton.setBackground(background);
+                    }
+                }
+                if ((changes & PAYLOAD_SIZE) != 0) {
+                    if (holder.mNumberButton.getTextSize() != mCustomizationOptionsBundle.getTextSize()) {
+                        holder.mNumberButton.setTextSize(TypedValue.COMPLEX_UNIT_PX,
+                                mCustomizationOptionsBundle.getTextSize());
+                    }
+                    setSize(holder.mNumberButton, mCustomizationOptionsBundle.getButtonSize());
                 }
-                holder.mNumberButton.setTextSize(TypedValue.COMPLEX_UNIT_PX,
-                        mCustomizationOptionsBundle.getTextSize());
-                LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                        mCustomizationOptionsBundle.getButtonSize(),
-                        mCustomizationOptionsBundle.getButtonSize());
-                holder.mNumberButton.setLayoutParams(params);
             }
         }
     }
 
 
     private boolean isBiometricDisabled = false;
-    @SuppressLint("NotifyDataSetChanged")
     public void disableBiometric(boolean isBiometricDisabled){
-        this.isBiometricDisabled = isBiometricDisabled;
-        notifyDataSetChanged();
+        if (this.isBiometricDisabled != isBiometricDisabled) {
+            this.isBiometricDisabled = isBiometricDisabled;
+            notifyKeyChanged(mLayout.getBiometricPosition(), PAYLOAD_VISIBILITY);
+        }
     }
 
-    private void configureBiometricButtonHolder(BiometricViewHolder holder) {
+    // Assumed until the device is checked, so the key shows up as it always did
+    private boolean isBiometricAvailable = true;
+    void setBiometricAvailable(boolean isBiometricAvailable) {
+        if (this.isBiometricAvailable != isBiometricAvailable) {
+            this.isBiometricAvailable = isBiometricAvailable;
+            notifyKeyChanged(mLayout.getBiometricPosition(), PAYLOAD_VISIBILITY);
+        }
+    }
+
+    private void configureBiometricButtonHolder(BiometricViewHolder holder, int changes) {
         if (holder != null) {
-            if (isBiometricDisabled){
-                holder.mButtonImage.setVisibility(View.GONE);
-            }else {
-                holder.mButtonImage.setVisibility(View.VISIBLE);
-                if (mCustomizationOptionsBundle.getDeleteButtonDrawable() != null) {
-                    holder.mButtonImage.setImageDrawable(mCustomizationOptionsBundle.getDeleteButtonDrawable());
-                }
-                holder.mButtonImage.setColorFilter(mCustomizationOptionsBundle.getTextColor(),
-                        PorterDuff.Mode.SRC_ATOP);
-                LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                        mCustomizationOptionsBundle.getDeleteButtonSize(),
-                        mCustomizationOptionsBundle.getDeleteButtonSize());
-                holder.mButtonImage.setLayoutParams(params);
+            if ((changes & PAYLOAD_VISIBILITY) != 0) {
+                boolean visible = !isBiometricDisabled && isBiometricAvailable;
+                holder.mButtonImage.setVisibility(visible ? View.VISIBLE : View.GONE);
+                // The empty cell mustn't open the prompt
+                holder.mDeleteButton.setClickable(visible);
             }
+            configureImageButton(holder.mButtonImage, holder.mDefaultImage, changes);
+        }
+    }
 
+    private void configureDeleteButtonHolder(DeleteViewHolder holder, int changes) {
+        if (holder != null) {
+            if ((changes & PAYLOAD_VISIBILITY) != 0) {
+                boolean visible = mCustomizationOptionsBundle.isShowDeleteButton() && mPinLength > 0;
+                holder.mButtonImage.setVisibility(visible ? View.VISIBLE : View.GONE);
+                // The empty cell mustn't delete, or play the key feedback
+                holder.mDeleteButton.setClickable(visible);
+            }
+            configureImageButton(holder.mButtonImage, holder.mDefaultImage, changes);
         }
     }
 
-    private void configureDeleteButtonHolder(DeleteViewHolder holder) {
+    private void configureActionButtonHolder(ActionViewHolder holder, int position, int changes) {
         if (holder != null) {
-            if (mCustomizationOptionsBundle.isShowDeleteButton() && mPinLength > 0) {
-                holder.mButtonImage.setVisibility(View.VISIBLE);
-                if (mCustomizationOptionsBundle.getDeleteButtonDrawable() != null) {
-                    holder.mButtonImage.setImageDrawable(mCustomizationOptionsBundle.getDeleteButtonDrawable());
-                }
-                holder.mButtonImage.setColorFilter(mCustomizationOptionsBundle.getTextColor(), PorterDuff.Mode.SRC_ATOP);
-                LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                        mCustomizationOptionsBundle.getDeleteButtonSize(),
-                        mCustomizationOptionsBundle.getDeleteButtonSize());
-                holder.mButtonImage.setLayoutParams(params);
-            } else {
-                holder.mButtonImage.setVisibility(View.GONE);
+            if ((changes & PAYLOAD_KEYS) != 0 && holder.mKey != mKeyValues[position]) {
+                holder.mKey = mKeyValues[position];
+                holder.mButtonImage.setImageResource(holder.mKey == KeypadLayout.KEY_SUBMIT
+                        ? R.drawable.ic_submit : R.drawable.ic_clear);
+            }
+            configureIcon(holder.mButtonImage, changes);
+        }
+    }
+
+    private void configureImageButton(ImageView buttonImage, Drawable defaultImage, int changes) {
+        if ((changes & PAYLOAD_DRAWABLE) != 0) {
+            Drawable image = mCustomizationOptionsBundle.getDeleteButtonDrawable();
+            if (image == null) {
+                image = defaultImage;
+            }
+            if (buttonImage.getDrawable() != image) {
+                buttonImage.setImageDrawable(image);
+            }
+        }
+        configureIcon(buttonImage, changes);
+    }
+
+    private void configureIcon(ImageView buttonImage, int changes) {
+        if ((changes & PAYLOAD_COLOR) != 0) {
+            buttonImage.setColorFilter(mCustomizationOptionsBundle.getTextColor(), PorterDuff.Mode.SRC_ATOP);
+        }
+        if ((changes & PAYLOAD_SIZE) != 0) {
+            setSize(buttonImage, mCustomizationOptionsBundle.getDeleteButtonSize());
+        }
+    }
+
+    // Only touches the layout params, and so only requests a layout, when the size changed
+    private static void setSize(View view, int size) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params.width != size || params.height != size) {
+            params.width = size;
+            params.height = size;
+            view.setLayoutParams(params);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        // Pooled holders mustn't keep the keypad that bound them alive
+        ((KeyViewHolder) holder).mAdapter = null;
+    }
+
+    /**
+     * Builds the key views with {@code viewContext} instead of the context of the RecyclerView,
+     * for holders that outlive it in a shared pool.
+     */
+    void setViewContext(Context viewContext) {
+        this.mViewContext = viewContext;
+    }
+
+    /**
+     * Puts {@code keyValues}, the ten digits in grid order, on the number keys. Only the keys
+     * whose digit changed are rebound, with {@link #PAYLOAD_KEYS}, so the holders are kept and
+     * nothing is laid out again.
+     */
+    void setKeyValues(int[] keyValues) {
+        for (int i = 0; i < keyValues.length; i++) {
+            int position = mLayout.getDigitPosition(i);
+            if (mKeyValues[position] != keyValues[i]) {
+                mKeyValues[position] = keyValues[i];
+                notifyItemChanged(position, PAYLOAD_KEYS);
+            }
+        }
+    }
+
+    /**
+     * Puts the digits back where {@code layout} has them.
+     */
+    void resetKeyValues() {
+        for (int i = 0; i < KeyPermutationPool.DIGIT_COUNT; i++) {
+            int position = mLayout.getDigitPosition(i);
+            if (mKeyValues[position] != mLayout.getKey(position)) {
+                mKeyValues[position] = mLayout.getKey(position);
+                notifyItemChanged(position, PAYLOAD_KEYS);
+            }
+        }
+    }
+
+    KeypadLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Switches to {@code layout}. The cells change, so this is the one change that rebinds
+     * every key.
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    void setLayout(KeypadLayout layout) {
+        if (mLayout == layout) {
+            return;
+        }
+        mLayout = layout;
+        if (mKeyValues.length != layout.getKeyCount()) {
+            mKeyValues = new int[layout.getKeyCount()];
+        }
+        layout.copyKeys(mKeyValues);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Enables or disables every key, e.g. during a lockout, with a single payload rebind.
+     */
+    void setKeysEnabled(boolean keysEnabled) {
+        if (mKeysEnabled != keysEnabled) {
+            mKeysEnabled = keysEnabled;
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_ENABLED);
+        }
+    }
+
+    /**
+     * Rebinds {@code changes} on the number keys only.
+     */
+    void notifyNumbersChanged(int changes) {
+        for (int i = 0; i < KeyPermutationPool.DIGIT_COUNT; i++) {
+            notifyItemChanged(mLayout.getDigitPosition(i), changes);
+        }
+    }
+
+    /**
+     * Rebinds {@code changes} on the keys with an icon only.
+     */
+    void notifyIconsChanged(int changes) {
+        for (int position = 0; position < mKeyValues.length; position++) {
+            int key = mKeyValues[position];
+            if (key < 0 && key != KeypadLayout.KEY_EMPTY) {
+                notifyItemChanged(position, changes);
             }
         }
     }
 
+    /**
+     * Rebinds {@code changes} on the delete key, if the layout has one.
+     */
+    void notifyDeleteKeyChanged(int changes) {
+        notifyKeyChanged(mLayout.getDeletePosition(), changes);
+    }
+
+    private void notifyKeyChanged(int position, int changes) {
+        if (position != -1) {
+            notifyItemChanged(position, changes);
+        }
+    }
+
     @Override
     public int getItemCount() {
-        return 12;
+        return mKeyValues.length;
     }
 
     @Override
     public int getItemViewType(int position) {
-        if (position == 9) {
-            return VIEW_TYPE_BIOMETRIC;
+        switch (mKeyValues[position]) {
+            case KeypadLayout.KEY_BIOMETRIC:
+                return VIEW_TYPE_BIOMETRIC;
+            case KeypadLayout.KEY_DELETE:
+                return VIEW_TYPE_DELETE;
+            case KeypadLayout.KEY_SUBMIT:
+            case KeypadLayout.KEY_CLEAR:
+                return VIEW_TYPE_ACTION;
+            case KeypadLayout.KEY_EMPTY:
+                return VIEW_TYPE_EMPTY;
+            default:
+                return VIEW_TYPE_NUMBER;
         }
-        if (position == getItemCount() - 1) {
-            return VIEW_TYPE_DELETE;
+    }
+
+    void setKeyFeedback(KeyFeedback keyFeedback) {
+        this.mKeyFeedback = keyFeedback;
+    }
+
+    // Called for every touch on a key, before its click listener
+    private void onKeyTouched(KeyViewHolder holder, View key, MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            // Skips the disabled keys during a lockout and the empty biometric cell
+            if (mKeyFeedback != null && key.isEnabled() && key.isClickable()) {
+                mKeyFeedback.onKeyDown(key);
+            }
+        } else if (action == MotionEvent.ACTION_UP && mMetrics != null
+                && holder instanceof NumberViewHolder) {
+            // Only needed for the latency metrics, so skip it when nobody listens
+            mLastKeyUpTimeNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                    ? event.getEventTimeNanos()
+                    : event.getEventTime() * 1_000_000L;
         }
-        return VIEW_TYPE_NUMBER;
+    }
+
+    void setMetrics(PinlockrMetrics metrics) {
+        this.mMetrics = metrics;
+        mLastKeyUpTimeNanos = 0;
+    }
+
+    /**
+     * Time of the ACTION_UP of the last number key, on the uptime clock that
+     * {@link System#nanoTime()} also uses. In nanoseconds, but only with millisecond precision
+     * before API 34. Only tracked while metrics are set, 0 otherwise.
+     */
+    long getLastKeyUpTimeNanos() {
+        return mLastKeyUpTimeNanos;
     }
 
     public int getPinLength() {
@@ -164,19 +471,6 @@ public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     }
 
 
-    private int[] getAdjustKeyValues(int[] keyValues) {
-        int[] adjustedKeyValues = new int[keyValues.length + 1];
-        for (int i = 0; i < keyValues.length; i++) {
-            if (i < 9) {
-                adjustedKeyValues[i] = keyValues[i];
-            } else {
-                adjustedKeyValues[i] = -1;
-                adjustedKeyValues[i + 1] = keyValues[i];
-            }
-        }
-        return adjustedKeyValues;
-    }
-
     public OnNumberClickListener getOnItemClickListener() {
         return mOnNumberClickListener;
     }
@@ -201,6 +495,14 @@ public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         this.mOnBiometricClickListener = onBiometricClickListener;
     }
 
+    public OnActionClickListener getOnActionClickListener() {
+        return mOnActionClickListener;
+    }
+
+    public void setOnActionClickListener(OnActionClickListener onActionClickListener) {
+        this.mOnActionClickListener = onActionClickListener;
+    }
+
     public CustomizationOptionsBundle getCustomizationOptions() {
         return mCustomizationOptionsBundle;
     }
@@ -209,37 +511,65 @@ public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         this.mCustomizationOptionsBundle = customizationOptionsBundle;
     }
 
-    public class NumberViewHolder extends RecyclerView.ViewHolder {
+    /**
+     * Base class for the key holders. Holders don't capture the adapter that created them, they
+     * forward clicks to whichever adapter bound them last, so they can be created ahead of time
+     * and shared through a {@link RecyclerView.RecycledViewPool}.
+     */
+    static class KeyViewHolder extends RecyclerView.ViewHolder {
+        PinlockrAdapter mAdapter;
+
+        @SuppressLint("ClickableViewAccessibility")
+        KeyViewHolder(View itemView) {
+            super(itemView);
+            itemView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    if (mAdapter != null) {
+                        mAdapter.onKeyTouched(KeyViewHolder.this, v, event);
+                    }
+                    return false;
+                }
+            });
+        }
+    }
+
+    public static class NumberViewHolder extends KeyViewHolder {
         Button mNumberButton;
+        int mKeyValue;
+        final Drawable mDefaultBackground;
 
         public NumberViewHolder(final View itemView) {
             super(itemView);
-            mNumberButton = (Button) itemView.findViewById(R.id.button);
+            mNumberButton = (Button) itemView;
+            mDefaultBackground = mNumberButton.getBackground();
             mNumberButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    if (mOnNumberClickListener != null) {
-                        mOnNumberClickListener.onNumberClicked((Integer) v.getTag());
+                    if (mAdapter != null && mAdapter.mOnNumberClickListener != null) {
+                        mAdapter.mOnNumberClickListener.onNumberClicked(mKeyValue);
                     }
                 }
             });
         }
     }
 
-    public class BiometricViewHolder extends RecyclerView.ViewHolder {
+    public static class BiometricViewHolder extends KeyViewHolder {
         LinearLayout mDeleteButton;
         ImageView mButtonImage;
+        final Drawable mDefaultImage;
 
         public BiometricViewHolder(final View itemView) {
             super(itemView);
-            mDeleteButton = (LinearLayout) itemView.findViewById(R.id.button);
-            mButtonImage = (ImageView) itemView.findViewById(R.id.buttonImage);
+            mDeleteButton = (LinearLayout) itemView;
+            mButtonImage = (ImageView) mDeleteButton.getChildAt(0);
+            mDefaultImage = mButtonImage.getDrawable();
 
             mDeleteButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    if (mOnBiometricClickListener != null){
-                        mOnBiometricClickListener.onBiometricClicked();
+                    if (mAdapter != null && mAdapter.mOnBiometricClickListener != null) {
+                        mAdapter.mOnBiometricClickListener.onBiometricClicked();
                     }
                 }
             });
@@ -248,25 +578,47 @@ public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
-    public class DeleteViewHolder extends RecyclerView.ViewHolder {
+    public static class DeleteViewHolder extends KeyViewHolder {
         LinearLayout mDeleteButton;
         ImageView mButtonImage;
+        final Drawable mDefaultImage;
 
         public DeleteViewHolder(final View itemView) {
             super(itemView);
-            mDeleteButton = (LinearLayout) itemView.findViewById(R.id.button);
-            mButtonImage = (ImageView) itemView.findViewById(R.id.buttonImage);
-
-            if (mCustomizationOptionsBundle.isShowDeleteButton() && mPinLength > 0) {
-                mDeleteButton.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        if (mOnDeleteClickListener != null) {
-                            mOnDeleteClickListener.onDeleteClicked();
-                        }
+            mDeleteButton = (LinearLayout) itemView;
+            mButtonImage = (ImageView) mDeleteButton.getChildAt(0);
+            mDefaultImage = mButtonImage.getDrawable();
+
+            mDeleteButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (mAdapter != null && mAdapter.mOnDeleteClickListener != null) {
+                        mAdapter.mOnDeleteClickListener.onDeleteClicked();
+                    }
+                }
+            });
+        }
+    }
+
+    public static class ActionViewHolder extends KeyViewHolder {
+        LinearLayout mActionButton;
+        ImageView mButtonImage;
+        // KeypadLayout.KEY_SUBMIT or KEY_CLEAR, 0 until bound
+        int mKey;
+
+        public ActionViewHolder(final View itemView) {
+            super(itemView);
+            mActionButton = (LinearLayout) itemView;
+            mButtonImage = (ImageView) mActionButton.getChildAt(0);
+
+            mActionButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (mAdapter != null && mAdapter.mOnActionClickListener != null) {
+                        mAdapter.mOnActionClickListener.onActionClicked(mKey);
                     }
-                });
-            }
+                }
+            });
         }
     }
 
@@ -282,4 +634,11 @@ public class PinlockrAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     public interface OnBiometricClickListener {
         void onBiometricClicked();
     }
+
+    public interface OnActionClickListener {
+        /**
+         * @param key {@link KeypadLayout#KEY_SUBMIT} or {@link KeypadLayout#KEY_CLEAR}
+         */
+        void onActionClicked(int key);
+    }
 }
@@ -0,0 +1,83 @@
+package com.hbisoft.pinlockr;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background executors shared by the library for work that must stay off the UI thread.
+ * <p>
+ * PIN hashing deliberately takes ~150 ms per task, so it runs on its own thread. Everything
+ * else (loads, writes, prewarming) never waits behind a hash. Biometric availability checks get
+ * a thread of their own too, since a tap on the biometric key may be waiting for one, and they
+ * shouldn't queue behind a file sync.
+ */
+final class PinlockrExecutors {
+
+    private static volatile ExecutorService sBackground;
+    private static volatile ExecutorService sKdf;
+    private static volatile ExecutorService sBiometric;
+
+    private PinlockrExecutors() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Short tasks: file loads and writes, cipher preparation, key shuffles and prewarming.
+     */
+    static Executor background() {
+        ExecutorService executor = sBackground;
+        if (executor == null) {
+            synchronized (PinlockrExecutors.class) {
+                executor = sBackground;
+                if (executor == null) {
+                    executor = newThread("Pinlockr-background");
+                    sBackground = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Key derivation only, see {@link PinHasher}.
+     */
+    static Executor kdf() {
+        ExecutorService executor = sKdf;
+        if (executor == null) {
+            synchronized (PinlockrExecutors.class) {
+                executor = sKdf;
+                if (executor == null) {
+                    executor = newThread("Pinlockr-kdf");
+                    sKdf = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Biometric availability checks only, see {@link BiometricController}.
+     */
+    static Executor biometric() {
+        ExecutorService executor = sBiometric;
+        if (executor == null) {
+            synchronized (PinlockrExecutors.class) {
+                executor = sBiometric;
+                if (executor == null) {
+                    executor = newThread("Pinlockr-biometric");
+                    sBiometric = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService newThread(String name) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,900 @@
+package com.hbisoft.pinlockr;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.graphics.ColorUtils;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
+
+import java.util.List;
+
+/**
+ * Single-view alternative to {@link PinlockrView}.
+ * <p>
+ * All 12 keys are drawn in one {@link #onDraw(Canvas)} pass with their own hit-testing and
+ * pressed state, so there are no child views to inflate, measure or lay out. It accepts the
+ * same {@code R.styleable.PinlockrView} attributes and fires the same {@link PinlockrListener}
+ * callbacks as {@link PinlockrView}.
+ */
+public class PinlockrKeypadView extends View {
+    private static final int DEFAULT_PIN_LENGTH = 4;
+    private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+    private static final int PRESSED_HIGHLIGHT_ALPHA = 0x33;
+    private static final float LOCKED_OUT_ALPHA = 0.4f;
+
+    private final PinEntryEngine mEngine = new PinEntryEngine(DEFAULT_PIN_LENGTH);
+    private int mPinLength;
+    private int mHorizontalSpacing, mVerticalSpacing;
+    private int mTextColor, mDeleteButtonPressedColor;
+    private int mTextSize, mButtonSize, mDeleteButtonSize;
+    private Drawable mButtonBackgroundDrawable;
+    private Drawable mDeleteButtonDrawable;
+    private Drawable mBiometricDrawable;
+    private Drawable mSubmitDrawable;
+    private Drawable mClearDrawable;
+    private boolean mShowDeleteButton;
+    private final StyledResources mStyledResources = new StyledResources();
+    private boolean mBiometricDisabled = false;
+    // Assumed until the device is checked, so the key shows up as it always did
+    private boolean mBiometricAvailable = true;
+    private IndicatorDots mIndicatorDots;
+    private PinlockrListener mPinlockrListener;
+    private BiometricController mBiometricController;
+
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPressedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final PorterDuffColorFilter[] mIconFilters = new PorterDuffColorFilter[2];
+    private KeypadLayout mKeypadLayout = KeypadLayout.PHONE;
+    // The layout's keys, with the digits shuffled while scrambling
+    private int[] mKeyValues = new int[mKeypadLayout.getKeyCount()];
+    private int[] mCellLeft = new int[mKeypadLayout.getKeyCount()];
+    private int[] mCellTop = new int[mKeypadLayout.getKeyCount()];
+    private final Rect mIconBounds = new Rect();
+    private float mTextBaselineOffset;
+    private int mPressedKey = -1;
+    private KeypadAccessibilityHelper mAccessibilityHelper;
+    private String mBiometricDescription;
+    private String mDeleteDescription;
+    private String mSubmitDescription;
+    private String mClearDescription;
+    private PinAttemptTracker mAttemptTracker;
+    private boolean mLockedOut = false;
+    // The hardware key whose down event was handled, so its up event is consumed too
+    private int mHandledKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+    private KeyFeedback mKeyFeedback;
+    private final int[] mScrambledDigits = new int[KeyPermutationPool.DIGIT_COUNT];
+    private int mScrambleMode = PinlockrView.ScrambleMode.OFF;
+
+    private final PinAttemptTracker.OnLockoutChangedListener mLockoutListener = new PinAttemptTracker.OnLockoutChangedListener() {
+        @Override
+        public void onLockoutChanged(@NonNull PinAttemptTracker tracker) {
+            // The tracker calls this from the background thread once its journal is loaded
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                updateLockout();
+            } else {
+                post(mLockoutEndRunnable);
+            }
+        }
+    };
+
+    private final Runnable mLockoutEndRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateLockout();
+        }
+    };
+
+    public PinlockrKeypadView(Context context) {
+        this(context, null);
+    }
+
+    public PinlockrKeypadView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PinlockrKeypadView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(attrs);
+    }
+
+    private void init(AttributeSet attributeSet) {
+        mBiometricController = new BiometricController(getContext());
+        mBiometricController.setOnAvailabilityChangedListener(new BiometricController.OnAvailabilityChangedListener() {
+            @Override
+            public void onAvailabilityChanged(boolean available) {
+                mBiometricAvailable = available;
+                invalidateKey(mKeypadLayout.getBiometricPosition());
+                mAccessibilityHelper.invalidateRoot();
+            }
+        });
+
+        int keyFeedback;
+        int scrambleMode;
+        int keypadLayout;
+        TypedArray typedArray = getContext().obtainStyledAttributes(attributeSet, R.styleable.PinlockrView);
+        try {
+            mPinLength = typedArray.getInt(R.styleable.PinlockrView_pinLength, DEFAULT_PIN_LENGTH);
+            mEngine.setPinLength(mPinLength);
+            mHorizontalSpacing = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadHorizontalSpacing, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_horizontal_spacing));
+            mVerticalSpacing = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadVerticalSpacing, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_vertical_spacing));
+            mTextColor = typedArray.getColor(R.styleable.PinlockrView_keypadTextColor, ResourceUtils.getColor(getContext(), R.color.white));
+            mTextSize = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadTextSize, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_text_size));
+            mButtonSize = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadButtonSize, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_button_size));
+            mDeleteButtonSize = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadDeleteButtonSize, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_delete_button_size));
+            mButtonBackgroundDrawable = typedArray.getDrawable(R.styleable.PinlockrView_keypadButtonBackgroundDrawable);
+            mDeleteButtonDrawable = typedArray.getDrawable(R.styleable.PinlockrView_keypadDeleteButtonDrawable);
+            mShowDeleteButton = typedArray.getBoolean(R.styleable.PinlockrView_keypadShowDeleteButton, true);
+            mDeleteButtonPressedColor = typedArray.getColor(R.styleable.PinlockrView_keypadDeleteButtonPressedColor, ResourceUtils.getColor(getContext(), R.color.greyish));
+            keyFeedback = typedArray.getInt(R.styleable.PinlockrView_keypadFeedback, KeyFeedback.NONE);
+            scrambleMode = typedArray.getInt(R.styleable.PinlockrView_keypadScramble, PinlockrView.ScrambleMode.OFF);
+            keypadLayout = typedArray.getInt(R.styleable.PinlockrView_keypadLayout, KeypadLayout.AttrValue.PHONE);
+            mStyledResources.read(typedArray);
+        } finally {
+            typedArray.recycle();
+        }
+
+        mEngine.setAutoReset(!mShowDeleteButton);
+        mEngine.setListener(mEntryUpdates);
+        mKeypadLayout = KeypadLayout.fromAttr(keypadLayout);
+        setKeyCells();
+        setKeyFeedback(keyFeedback);
+
+        if (mDeleteButtonDrawable == null) {
+            mDeleteButtonDrawable = ResourceUtils.getDrawable(getContext(), R.drawable.ic_backspace);
+        }
+        mBiometricDrawable = ResourceUtils.getDrawable(getContext(), R.drawable.ic_fingerprint);
+        mSubmitDrawable = ResourceUtils.getDrawable(getContext(), R.drawable.ic_submit);
+        mClearDrawable = ResourceUtils.getDrawable(getContext(), R.drawable.ic_clear);
+        setDrawableCallback(mButtonBackgroundDrawable);
+        setDrawableCallback(mDeleteButtonDrawable);
+
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        updateTextPaint();
+        updateColors();
+
+        mBiometricDescription = getResources().getString(R.string.key_description_biometric);
+        mDeleteDescription = getResources().getString(R.string.key_description_delete);
+        mSubmitDescription = getResources().getString(R.string.key_description_submit);
+        mClearDescription = getResources().getString(R.string.key_description_clear);
+        mAccessibilityHelper = new KeypadAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+        setClickable(true);
+        // Takes digits from a hardware keyboard while focused, see onKeyDown
+        setFocusable(true);
+        setScrambleMode(scrambleMode);
+    }
+
+    public void setupPinlockrView(Activity activity, PinlockrListener pinlockrListener, IndicatorDots indicatorDots, int pinLength) {
+        mBiometricController.setup(activity, pinlockrListener);
+        this.mPinlockrListener = pinlockrListener;
+        this.mIndicatorDots = indicatorDots;
+        this.mPinLength = pinLength;
+        mEngine.setPinLength(pinLength);
+
+        if (isIndicatorDotsAttached()) {
+            mIndicatorDots.setPinLength(pinLength);
+        }
+        invalidate();
+    }
+
+    private final PinEntryEngine.Listener mEntryListener = new PinEntryEngine.Listener() {
+        @Override
+        public void onEntryChanged(int changes, int length) {
+            if ((changes & PinEntryEngine.CHANGED_LENGTH) != 0 && isIndicatorDotsAttached()) {
+                mIndicatorDots.updateDot(length);
+            }
+            if ((changes & PinEntryEngine.CHANGED_HAS_INPUT) != 0) {
+                invalidateKey(mKeypadLayout.getDeletePosition());
+            }
+        }
+
+        @Override
+        public void onComplete(CharSequence pin) {
+            if (mPinlockrListener != null) {
+                mPinlockrListener.onComplete(pin);
+            }
+            if (mScrambleMode == PinlockrView.ScrambleMode.AFTER_ATTEMPT) {
+                scrambleKeys();
+            }
+        }
+    };
+
+    // Applies mEntryListener's dot and delete key updates once per frame
+    private final FrameCoalescingListener mEntryUpdates = new FrameCoalescingListener(mEntryListener);
+
+    private void onKeyClicked(int key) {
+        int keyValue = mKeyValues[key];
+        if (keyValue == KeypadLayout.KEY_BIOMETRIC) {
+            mBiometricController.onBiometricClicked();
+        } else if (keyValue == KeypadLayout.KEY_DELETE) {
+            mEngine.delete();
+        } else if (keyValue == KeypadLayout.KEY_SUBMIT) {
+            mEngine.submit();
+        } else if (keyValue == KeypadLayout.KEY_CLEAR) {
+            mEngine.reset();
+        } else {
+            mEngine.appendDigit(keyValue);
+        }
+        mAccessibilityHelper.invalidateVirtualView(key);
+        mAccessibilityHelper.sendEventForVirtualView(key, AccessibilityEvent.TYPE_VIEW_CLICKED);
+    }
+
+    /**
+     * Whether the key at {@code key} is currently drawn and can be pressed.
+     */
+    private boolean isKeyEnabled(int key) {
+        int keyValue = mKeyValues[key];
+        if (keyValue == KeypadLayout.KEY_BIOMETRIC) {
+            return !mBiometricDisabled && mBiometricAvailable;
+        }
+        if (keyValue == KeypadLayout.KEY_DELETE) {
+            return mShowDeleteButton && mEngine.length() > 0;
+        }
+        return keyValue != KeypadLayout.KEY_EMPTY;
+    }
+
+    private int getKeyAt(float x, float y) {
+        if (mLockedOut) {
+            return -1;
+        }
+        for (int i = 0; i < mKeyValues.length; i++) {
+            if (x >= mCellLeft[i] && x < mCellLeft[i] + mButtonSize
+                    && y >= mCellTop[i] && y < mCellTop[i] + mButtonSize) {
+                return isKeyEnabled(i) ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int columns = mKeypadLayout.getColumns();
+        int rows = mKeypadLayout.getRows();
+        int desiredWidth = getPaddingLeft() + getPaddingRight()
+                + columns * mButtonSize + (columns - 1) * mHorizontalSpacing;
+        int desiredHeight = getPaddingTop() + getPaddingBottom()
+                + rows * mButtonSize + (rows - 1) * mVerticalSpacing;
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec),
+                resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeCells();
+    }
+
+    private void computeCells() {
+        int columns = mKeypadLayout.getColumns();
+        int rows = mKeypadLayout.getRows();
+        int contentWidth = columns * mButtonSize + (columns - 1) * mHorizontalSpacing;
+        int contentHeight = rows * mButtonSize + (rows - 1) * mVerticalSpacing;
+        // Center the grid when the view is larger than it needs to be
+        int left = getPaddingLeft() + Math.max(0, (getWidth() - getPaddingLeft() - getPaddingRight() - contentWidth) / 2);
+        int top = getPaddingTop() + Math.max(0, (getHeight() - getPaddingTop() - getPaddingBottom() - contentHeight) / 2);
+        for (int i = 0; i < mKeyValues.length; i++) {
+            mCellLeft[i] = left + (i % columns) * (mButtonSize + mHorizontalSpacing);
+            mCellTop[i] = top + (i / columns) * (mButtonSize + mVerticalSpacing);
+        }
+    }
+
+    private Drawable getIcon(int keyValue) {
+        switch (keyValue) {
+            case KeypadLayout.KEY_DELETE:
+                return mDeleteButtonDrawable;
+            case KeypadLayout.KEY_BIOMETRIC:
+                return mBiometricDrawable;
+            case KeypadLayout.KEY_SUBMIT:
+                return mSubmitDrawable;
+            default:
+                return mClearDrawable;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float radius = mButtonSize / 2f;
+        for (int i = 0; i < mKeyValues.length; i++) {
+            if (!isKeyEnabled(i)) {
+                continue;
+            }
+            int left = mCellLeft[i];
+            int top = mCellTop[i];
+            int keyValue = mKeyValues[i];
+            boolean pressed = i == mPressedKey;
+
+            if (keyValue >= 0) {
+                if (mButtonBackgroundDrawable != null) {
+                    mButtonBackgroundDrawable.setBounds(left, top, left + mButtonSize, top + mButtonSize);
+                    if (mButtonBackgroundDrawable.isStateful()) {
+                        mButtonBackgroundDrawable.setState(pressed ? PRESSED_STATE_SET : EMPTY_STATE_SET);
+                    }
+                    mButtonBackgroundDrawable.draw(canvas);
+                }
+                if (pressed && (mButtonBackgroundDrawable == null || !mButtonBackgroundDrawable.isStateful())) {
+                    canvas.drawCircle(left + radius, top + radius, radius, mPressedPaint);
+                }
+                canvas.drawText(DIGITS, keyValue, 1, left + radius, top + radius + mTextBaselineOffset, mTextPaint);
+            } else {
+                Drawable icon = getIcon(keyValue);
+                if (icon == null) {
+                    continue;
+                }
+                int inset = (mButtonSize - mDeleteButtonSize) / 2;
+                mIconBounds.set(left + inset, top + inset, left + inset + mDeleteButtonSize, top + inset + mDeleteButtonSize);
+                icon.setBounds(mIconBounds);
+                icon.setColorFilter(mIconFilters[pressed ? 1 : 0]);
+                icon.draw(canvas);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!isEnabled()) {
+            return super.onTouchEvent(event);
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                setPressedKey(getKeyAt(event.getX(), event.getY()));
+                if (mPressedKey != -1 && mKeyFeedback != null) {
+                    mKeyFeedback.onKeyDown(this);
+                }
+                return mPressedKey != -1;
+            case MotionEvent.ACTION_MOVE:
+                if (mPressedKey != -1 && getKeyAt(event.getX(), event.getY()) != mPressedKey) {
+                    setPressedKey(-1);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                int key = mPressedKey;
+                setPressedKey(-1);
+                if (key != -1) {
+                    performClick();
+                    onKeyClicked(key);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedKey(-1);
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        int key = HardwareKeys.map(event, true);
+        if (key != HardwareKeys.NONE && handleKeyDown(key, event)) {
+            mHandledKeyCode = keyCode;
+            return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    // Returns false for the events that are ignored, during a lockout or repeats of a held key
+    private boolean handleKeyDown(int key, KeyEvent event) {
+        if (mLockedOut) {
+            return false;
+        }
+        if (key == HardwareKeys.DELETE) {
+            // Holding delete keeps deleting
+            mEngine.delete();
+        } else if (event.getRepeatCount() != 0) {
+            return false;
+        } else if (key == HardwareKeys.SUBMIT) {
+            mEngine.submit();
+        } else {
+            mEngine.appendDigit(key);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onKeyUp(int keyCode, KeyEvent event) {
+        if (keyCode == mHandledKeyCode) {
+            mHandledKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+            return true;
+        }
+        return super.onKeyUp(keyCode, event);
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mAccessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    private void setPressedKey(int key) {
+        if (key == mPressedKey) {
+            return;
+        }
+        int previous = mPressedKey;
+        mPressedKey = key;
+        invalidateKey(previous);
+        invalidateKey(key);
+    }
+
+    private void invalidateKey(int key) {
+        if (key < 0) {
+            return;
+        }
+        invalidate(mCellLeft[key], mCellTop[key], mCellLeft[key] + mButtonSize, mCellTop[key] + mButtonSize);
+    }
+
+    @Override
+    protected boolean verifyDrawable(@NonNull Drawable who) {
+        return who == mButtonBackgroundDrawable || who == mDeleteButtonDrawable || super.verifyDrawable(who);
+    }
+
+    private void setDrawableCallback(Drawable drawable) {
+        if (drawable != null) {
+            drawable.setCallback(this);
+        }
+    }
+
+    private void updateTextPaint() {
+        mTextPaint.setTextSize(mTextSize);
+        Paint.FontMetrics metrics = mTextPaint.getFontMetrics();
+        mTextBaselineOffset = -(metrics.ascent + metrics.descent) / 2f;
+    }
+
+    private void updateColors() {
+        mTextPaint.setColor(mTextColor);
+        mPressedPaint.setColor(ColorUtils.setAlphaComponent(mTextColor, PRESSED_HIGHLIGHT_ALPHA));
+        mIconFilters[0] = new PorterDuffColorFilter(mTextColor, PorterDuff.Mode.SRC_ATOP);
+        mIconFilters[1] = new PorterDuffColorFilter(mDeleteButtonPressedColor, PorterDuff.Mode.SRC_ATOP);
+    }
+
+    public void disableBiometricLogin(boolean shouldDisable) {
+        mBiometricDisabled = shouldDisable;
+        invalidateKey(mKeypadLayout.getBiometricPosition());
+    }
+
+    /**
+     * Binds biometric unlock to a Keystore key, see {@link BiometricCryptoBinding}. Pass null to
+     * authenticate without a crypto object again.
+     */
+    public void setBiometricCryptoBinding(@Nullable BiometricCryptoBinding cryptoBinding) {
+        mBiometricController.setCryptoBinding(cryptoBinding);
+    }
+
+    public void customizeBiometricDialog(String titleText, String subTitleText, String buttonTitle) {
+        mBiometricController.customizeDialog(titleText, subTitleText, buttonTitle);
+    }
+
+    public int getPinLength() {
+        return mPinLength;
+    }
+
+    public int getTextColor() {
+        return mTextColor;
+    }
+
+    public void setTextColor(int textColor) {
+        this.mTextColor = textColor;
+        mStyledResources.forget(StyledResources.TEXT_COLOR);
+        updateColors();
+        invalidate();
+    }
+
+    public int getTextSize() {
+        return mTextSize;
+    }
+
+    public void setTextSize(int textSize) {
+        this.mTextSize = textSize;
+        mStyledResources.forget(StyledResources.TEXT_SIZE);
+        updateTextPaint();
+        invalidate();
+    }
+
+    public int getButtonSize() {
+        return mButtonSize;
+    }
+
+    public void setButtonSize(int buttonSize) {
+        this.mButtonSize = buttonSize;
+        mStyledResources.forget(StyledResources.BUTTON_SIZE);
+        requestLayout();
+        computeCells();
+        invalidate();
+    }
+
+    public Drawable getButtonBackgroundDrawable() {
+        return mButtonBackgroundDrawable;
+    }
+
+    public void setButtonBackgroundDrawable(Drawable buttonBackgroundDrawable) {
+        this.mButtonBackgroundDrawable = buttonBackgroundDrawable;
+        setDrawableCallback(buttonBackgroundDrawable);
+        invalidate();
+    }
+
+    public Drawable getDeleteButtonDrawable() {
+        return mDeleteButtonDrawable;
+    }
+
+    public void setDeleteButtonDrawable(Drawable deleteBackgroundDrawable) {
+        this.mDeleteButtonDrawable = deleteBackgroundDrawable;
+        setDrawableCallback(deleteBackgroundDrawable);
+        invalidateKey(mKeypadLayout.getDeletePosition());
+    }
+
+    public int getDeleteButtonSize() {
+        return mDeleteButtonSize;
+    }
+
+    public void setDeleteButtonSize(int deleteButtonSize) {
+        this.mDeleteButtonSize = deleteButtonSize;
+        mStyledResources.forget(StyledResources.DELETE_BUTTON_SIZE);
+        invalidate();
+    }
+
+    public boolean isShowDeleteButton() {
+        return mShowDeleteButton;
+    }
+
+    public void setShowDeleteButton(boolean showDeleteButton) {
+        this.mShowDeleteButton = showDeleteButton;
+        mEngine.setAutoReset(!showDeleteButton);
+        invalidateKey(mKeypadLayout.getDeletePosition());
+    }
+
+    public int getDeleteButtonPressedColor() {
+        return mDeleteButtonPressedColor;
+    }
+
+    public void setDeleteButtonPressedColor(int deleteButtonPressedColor) {
+        this.mDeleteButtonPressedColor = deleteButtonPressedColor;
+        mStyledResources.forget(StyledResources.DELETE_BUTTON_PRESSED_COLOR);
+        updateColors();
+        invalidateKey(mKeypadLayout.getDeletePosition());
+    }
+
+    /**
+     * Applies every value of {@code style} at once, with a single layout or redraw.
+     */
+    public void applyStyle(@NonNull PinlockrStyle style) {
+        boolean sizeChanged = style.getButtonSize() != mButtonSize;
+        mStyledResources.forgetAll();
+        mTextColor = style.getTextColor();
+        mTextSize = style.getTextSize();
+        mButtonSize = style.getButtonSize();
+        mDeleteButtonSize = style.getDeleteButtonSize();
+        mDeleteButtonPressedColor = style.getDeleteButtonPressedColor();
+        mShowDeleteButton = style.isShowDeleteButton();
+        mEngine.setAutoReset(!mShowDeleteButton);
+        // A drawable the style doesn't set goes back to the default
+        mButtonBackgroundDrawable = style.getButtonBackgroundDrawable(getContext());
+        setDrawableCallback(mButtonBackgroundDrawable);
+        mDeleteButtonDrawable = style.getDeleteButtonDrawableRes() != 0
+                ? style.getDeleteButtonDrawable(getContext())
+                : ResourceUtils.getDrawable(getContext(), R.drawable.ic_backspace);
+        setDrawableCallback(mDeleteButtonDrawable);
+        updateTextPaint();
+        updateColors();
+        if (sizeChanged) {
+            requestLayout();
+            computeCells();
+        }
+        invalidate();
+    }
+
+    /**
+     * Plays a click sound, haptic feedback or both when a key is pressed. Off by default.
+     *
+     * @param flags a combination of {@link KeyFeedback#SOUND} and {@link KeyFeedback#HAPTIC},
+     *              or {@link KeyFeedback#NONE}
+     */
+    public void setKeyFeedback(int flags) {
+        if (flags == getKeyFeedback()) {
+            return;
+        }
+        if (mKeyFeedback != null) {
+            mKeyFeedback.release();
+        }
+        mKeyFeedback = flags != KeyFeedback.NONE ? new KeyFeedback(flags) : null;
+        if (mKeyFeedback != null && isAttachedToWindow()) {
+            mKeyFeedback.load(getContext());
+        }
+    }
+
+    public int getKeyFeedback() {
+        return mKeyFeedback != null ? mKeyFeedback.getFlags() : KeyFeedback.NONE;
+    }
+
+    /**
+     * Changes the key grid, see {@link PinlockrView#setKeypadLayout(KeypadLayout)}.
+     */
+    public void setKeypadLayout(@NonNull KeypadLayout keypadLayout) {
+        if (mKeypadLayout == keypadLayout) {
+            return;
+        }
+        // Before the cells change, since it invalidates the pressed one
+        setPressedKey(-1);
+        mKeypadLayout = keypadLayout;
+        setKeyCells();
+        if (mScrambleMode != PinlockrView.ScrambleMode.OFF && isShown()) {
+            scrambleKeys();
+        }
+        requestLayout();
+        computeCells();
+        onKeyValuesChanged();
+    }
+
+    @NonNull
+    public KeypadLayout getKeypadLayout() {
+        return mKeypadLayout;
+    }
+
+    // Sizes the per-cell arrays for the layout, so drawing and hit-testing only index into them
+    private void setKeyCells() {
+        int keyCount = mKeypadLayout.getKeyCount();
+        if (mKeyValues.length != keyCount) {
+            mKeyValues = new int[keyCount];
+            mCellLeft = new int[keyCount];
+            mCellTop = new int[keyCount];
+        }
+        mKeypadLayout.copyKeys(mKeyValues);
+    }
+
+    /**
+     * Shuffles the digits on the keypad, see {@link PinlockrView#setScrambleMode(int)}.
+     */
+    public void setScrambleMode(@PinlockrView.ScrambleMode int scrambleMode) {
+        if (mScrambleMode == scrambleMode) {
+            return;
+        }
+        mScrambleMode = scrambleMode;
+        if (scrambleMode == PinlockrView.ScrambleMode.OFF) {
+            mKeypadLayout.copyKeys(mKeyValues);
+            onKeyValuesChanged();
+        } else {
+            KeyPermutationPool.shared().prefill();
+            if (isShown()) {
+                scrambleKeys();
+            }
+        }
+    }
+
+    public
+    @PinlockrView.ScrambleMode
+    int getScrambleMode() {
+        return mScrambleMode;
+    }
+
+    private void scrambleKeys() {
+        KeyPermutationPool.shared().next(mScrambledDigits);
+        for (int i = 0; i < KeyPermutationPool.DIGIT_COUNT; i++) {
+            mKeyValues[mKeypadLayout.getDigitPosition(i)] = mScrambledDigits[i];
+        }
+        onKeyValuesChanged();
+    }
+
+    private void onKeyValuesChanged() {
+        invalidate();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        if (isVisible && mScrambleMode != PinlockrView.ScrambleMode.OFF) {
+            scrambleKeys();
+        }
+    }
+
+    /**
+     * Disables the keys while {@code attemptTracker} reports a lockout, and enables them again
+     * when it ends. They are also disabled until the tracker has read its journal, which doesn't
+     * block. Pass null to stop.
+     */
+    public void setAttemptTracker(@Nullable PinAttemptTracker attemptTracker) {
+        if (mAttemptTracker != null) {
+            mAttemptTracker.removeOnLockoutChangedListener(mLockoutListener);
+        }
+        mAttemptTracker = attemptTracker;
+        if (attemptTracker != null && isAttachedToWindow()) {
+            attemptTracker.addOnLockoutChangedListener(mLockoutListener);
+        }
+        updateLockout();
+    }
+
+    private void updateLockout() {
+        removeCallbacks(mLockoutEndRunnable);
+        long remaining = mAttemptTracker != null ? mAttemptTracker.remainingLockout() : 0;
+        if (remaining > 0) {
+            mEngine.reset();
+            setPressedKey(-1);
+            postDelayed(mLockoutEndRunnable, remaining);
+        }
+        // Until the tracker has read its journal the lockout is unknown, so the keys stay off
+        boolean lockedOut = remaining > 0 || (mAttemptTracker != null && !mAttemptTracker.isLoaded());
+        if (mLockedOut != lockedOut) {
+            mLockedOut = lockedOut;
+            // A view property, so the keys aren't redrawn
+            setAlpha(mLockedOut ? LOCKED_OUT_ALPHA : 1f);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mKeyFeedback != null) {
+            mKeyFeedback.load(getContext());
+        }
+        if (mAttemptTracker != null) {
+            mAttemptTracker.addOnLockoutChangedListener(mLockoutListener);
+            updateLockout();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mEntryUpdates.flush();
+        if (mKeyFeedback != null) {
+            mKeyFeedback.release();
+        }
+        if (mAttemptTracker != null) {
+            // The tracker usually outlives the screen, so it mustn't keep the view alive
+            mAttemptTracker.removeOnLockoutChangedListener(mLockoutListener);
+        }
+        removeCallbacks(mLockoutEndRunnable);
+    }
+
+    /**
+     * Only called when the host handles configuration changes itself through
+     * {@code android:configChanges}. The colors and sizes that came from resources are resolved
+     * again, and the keys are laid out or redrawn only if one of them changed.
+     */
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        Context context = getContext();
+        int textColor = mStyledResources.getColor(context, StyledResources.TEXT_COLOR, mTextColor);
+        int pressedColor = mStyledResources.getColor(context, StyledResources.DELETE_BUTTON_PRESSED_COLOR, mDeleteButtonPressedColor);
+        int textSize = mStyledResources.getDimension(context, StyledResources.TEXT_SIZE, mTextSize);
+        int buttonSize = mStyledResources.getDimension(context, StyledResources.BUTTON_SIZE, mButtonSize);
+        int deleteButtonSize = mStyledResources.getDimension(context, StyledResources.DELETE_BUTTON_SIZE, mDeleteButtonSize);
+        boolean changed = false;
+        if (textColor != mTextColor || pressedColor != mDeleteButtonPressedColor) {
+            mTextColor = textColor;
+            mDeleteButtonPressedColor = pressedColor;
+            updateColors();
+            changed = true;
+        }
+        if (textSize != mTextSize) {
+            mTextSize = textSize;
+            updateTextPaint();
+            changed = true;
+        }
+        if (buttonSize != mButtonSize) {
+            mButtonSize = buttonSize;
+            requestLayout();
+            computeCells();
+            changed = true;
+        }
+        if (deleteButtonSize != mDeleteButtonSize) {
+            mDeleteButtonSize = deleteButtonSize;
+            changed = true;
+        }
+        if (changed) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Keeps the entry when the Activity is recreated, e.g. on rotation. Only the masked digits
+     * are saved, see {@link EntryMask}, and like any view state it needs the view to have an id.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        PinEntrySavedState state = new PinEntrySavedState(super.onSaveInstanceState());
+        state.mEntry = mEngine.saveEntry();
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof PinEntrySavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        PinEntrySavedState savedState = (PinEntrySavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        // Not reported as complete, the PIN was already handled before the state was saved
+        mEngine.restoreEntry(savedState.mEntry);
+        savedState.mEntry = null;
+    }
+
+    public void resetPinlockrView() {
+        mEngine.reset();
+    }
+
+    public boolean isIndicatorDotsAttached() {
+        return mIndicatorDots != null;
+    }
+
+    /**
+     * Exposes the drawn keys to accessibility services as virtual views.
+     */
+    private class KeypadAccessibilityHelper extends ExploreByTouchHelper {
+
+        KeypadAccessibilityHelper(@NonNull View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int key = getKeyAt(x, y);
+            return key == -1 ? INVALID_ID : key;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            for (int i = 0; i < mKeyValues.length; i++) {
+                if (isKeyEnabled(i)) {
+                    virtualViewIds.add(i);
+                }
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, @NonNull AccessibilityNodeInfoCompat node) {
+            int keyValue = mKeyValues[virtualViewId];
+            if (keyValue == KeypadLayout.KEY_BIOMETRIC) {
+                node.setContentDescription(mBiometricDescription);
+            } else if (keyValue == KeypadLayout.KEY_DELETE) {
+                node.setContentDescription(mDeleteDescription);
+            } else if (keyValue == KeypadLayout.KEY_SUBMIT) {
+                node.setContentDescription(mSubmitDescription);
+            } else if (keyValue == KeypadLayout.KEY_CLEAR) {
+                node.setContentDescription(mClearDescription);
+            } else {
+                node.setText(String.valueOf(keyValue));
+            }
+            mIconBounds.set(mCellLeft[virtualViewId], mCellTop[virtualViewId],
+                    mCellLeft[virtualViewId] + mButtonSize, mCellTop[virtualViewId] + mButtonSize);
+            node.setBoundsInParent(mIconBounds);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            node.setClickable(true);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, @Nullable Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK && !mLockedOut && isKeyEnabled(virtualViewId)) {
+                onKeyClicked(virtualViewId);
+                return true;
+            }
+            return false;
+        }
+    }
+}
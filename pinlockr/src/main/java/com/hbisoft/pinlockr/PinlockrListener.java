@@ -1,12 +1,43 @@
 package com.hbisoft.pinlockr;
 
 
+import androidx.annotation.NonNull;
+
 public interface PinlockrListener {
 
-    void onComplete(String pin);
+    // Reasons passed to onBiometricFailed
+    // The biometric didn't match, or too many attempts locked the sensor
+    int BIOMETRIC_FAILED = 1;
+    // The user or the system dismissed the prompt
+    int BIOMETRIC_CANCELLED = 2;
+    // The device has no usable biometrics
+    int BIOMETRIC_UNAVAILABLE = 3;
+
+    /**
+     * Called with the entered PIN as a String.
+     * <p>
+     * This is what the default {@link #onComplete(CharSequence)} delegates to. Override
+     * {@link #onComplete(CharSequence)} instead if you don't want a String copy of the PIN.
+     */
+    default void onComplete(String pin) {
+    }
+
+    /**
+     * Called when the PIN is complete, without allocating.
+     * <p>
+     * {@code pin} is the live entry buffer; it is wiped when the view is reset, so copy it
+     * (e.g. {@link PinBuffer#toCharArray()}) if it is needed after this call returns.
+     */
+    default void onComplete(@NonNull CharSequence pin) {
+        onComplete(pin.toString());
+    }
 
     void onBiometricSuccess();
 
+    /**
+     * @param reason {@link #BIOMETRIC_FAILED}, {@link #BIOMETRIC_CANCELLED} or
+     *               {@link #BIOMETRIC_UNAVAILABLE}
+     */
     void onBiometricFailed(int reason);
 
 }
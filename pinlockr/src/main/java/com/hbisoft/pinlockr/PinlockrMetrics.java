@@ -0,0 +1,41 @@
+package com.hbisoft.pinlockr;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives timings from {@link PinlockrView}, see {@link PinlockrView#setMetrics(PinlockrMetrics)}.
+ * <p>
+ * Every duration is in nanoseconds, measured on the monotonic clock that {@link System#nanoTime()}
+ * and {@code MotionEvent} times are based on. Before API 34 the touch times only have millisecond
+ * precision, so {@link #INPUT_LATENCY} and {@link #CALLBACK_LATENCY} can be up to 1 ms off
+ * there. Callbacks happen on the main thread, in the middle of input handling and layout, so
+ * implementations should only record the value and return.
+ * {@link PinlockrMetricsRecorder} does exactly that.
+ */
+public interface PinlockrMetrics {
+
+    @IntDef({INPUT_LATENCY, CALLBACK_LATENCY, CALLBACK_DISPATCH, BIND_COST, LAYOUT_COST, BIOMETRIC_PROMPT_LATENCY})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Metric {
+    }
+
+    // From a key's ACTION_UP to the frame that shows the updated indicator dots
+    int INPUT_LATENCY = 0;
+    // From a key's ACTION_UP to the call of PinlockrListener#onComplete
+    int CALLBACK_LATENCY = 1;
+    // Time spent inside PinlockrListener#onComplete
+    int CALLBACK_DISPATCH = 2;
+    // Time spent binding a single key
+    int BIND_COST = 3;
+    // Time spent laying out the keypad
+    int LAYOUT_COST = 4;
+    // From the biometric key click until the biometric prompt has been asked to show
+    int BIOMETRIC_PROMPT_LATENCY = 5;
+
+    int METRIC_COUNT = 6;
+
+    void onMetric(@Metric int metric, long durationNanos);
+}
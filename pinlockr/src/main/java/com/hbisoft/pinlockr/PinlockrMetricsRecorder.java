@@ -0,0 +1,119 @@
+package com.hbisoft.pinlockr;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * {@link PinlockrMetrics} that keeps the most recent samples of every metric in preallocated ring
+ * buffers and summarizes them as percentiles. Recording a sample never allocates.
+ */
+public class PinlockrMetricsRecorder implements PinlockrMetrics {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final long[][] mSamples;
+    private final int[] mCounts = new int[METRIC_COUNT];
+    private final int[] mNext = new int[METRIC_COUNT];
+    private final long[] mScratch;
+
+    public PinlockrMetricsRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many of the most recent samples are kept per metric
+     */
+    public PinlockrMetricsRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mSamples = new long[METRIC_COUNT][capacity];
+        mScratch = new long[capacity];
+    }
+
+    @Override
+    public synchronized void onMetric(@Metric int metric, long durationNanos) {
+        long[] samples = mSamples[metric];
+        samples[mNext[metric]] = durationNanos;
+        mNext[metric] = (mNext[metric] + 1) % samples.length;
+        if (mCounts[metric] < samples.length) {
+            mCounts[metric]++;
+        }
+    }
+
+    /**
+     * Number of samples currently kept for {@code metric}.
+     */
+    public synchronized int getCount(@Metric int metric) {
+        return mCounts[metric];
+    }
+
+    /**
+     * Returns the given percentile (e.g. 50, 95 or 99) of the kept samples of {@code metric} in
+     * nanoseconds, using the nearest-rank method, or -1 if there are no samples.
+     */
+    public synchronized long getPercentile(@Metric int metric, double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+        }
+        int count = mCounts[metric];
+        if (count == 0) {
+            return -1;
+        }
+        System.arraycopy(mSamples[metric], 0, mScratch, 0, count);
+        Arrays.sort(mScratch, 0, count);
+        int rank = (int) Math.ceil(percentile / 100d * count);
+        return mScratch[Math.max(rank, 1) - 1];
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mNext, 0);
+    }
+
+    /**
+     * p50/p95/p99 of every metric in milliseconds, meant for logging.
+     */
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("PinlockrMetrics{");
+        for (int metric = 0; metric < METRIC_COUNT; metric++) {
+            if (metric > 0) {
+                builder.append(", ");
+            }
+            builder.append(getMetricName(metric)).append('=');
+            if (mCounts[metric] == 0) {
+                builder.append("n/a");
+            } else {
+                builder.append(String.format(Locale.US, "p50 %.2fms p95 %.2fms p99 %.2fms (n=%d)",
+                        getPercentile(metric, 50) / 1e6,
+                        getPercentile(metric, 95) / 1e6,
+                        getPercentile(metric, 99) / 1e6,
+                        mCounts[metric]));
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    private static String getMetricName(int metric) {
+        switch (metric) {
+            case INPUT_LATENCY:
+                return "inputLatency";
+            case CALLBACK_LATENCY:
+                return "callbackLatency";
+            case CALLBACK_DISPATCH:
+                return "callbackDispatch";
+            case BIND_COST:
+                return "bindCost";
+            case LAYOUT_COST:
+                return "layoutCost";
+            case BIOMETRIC_PROMPT_LATENCY:
+                return "biometricPromptLatency";
+            default:
+                return String.valueOf(metric);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the keypad appearance.
+ * <p>
+ * Build it once with {@link Builder} and apply it with {@link PinlockrView#applyStyle(PinlockrStyle)}.
+ * The most recently built styles are interned, so screens that build the same style get the same
+ * instance, and share the drawables that instance resolved for the same theme.
+ */
+public final class PinlockrStyle {
+
+    // An app has a handful of styles, older ones are dropped rather than kept for the process
+    private static final int MAX_INTERNED = 16;
+
+    private static final Map<PinlockrStyle, PinlockrStyle> sInterned = new LinkedHashMap<PinlockrStyle, PinlockrStyle>(MAX_INTERNED, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PinlockrStyle, PinlockrStyle> eldest) {
+            return size() > MAX_INTERNED;
+        }
+    };
+
+    private final int mTextColor;
+    private final int mTextSize;
+    private final int mButtonSize;
+    private final int mDeleteButtonSize;
+    private final int mDeleteButtonPressedColor;
+    private final boolean mShowDeleteButton;
+    private final int mButtonBackgroundDrawableRes;
+    private final int mDeleteButtonDrawableRes;
+
+    private final ResolvedDrawable mButtonBackgroundDrawable = new ResolvedDrawable();
+    private final ResolvedDrawable mDeleteButtonDrawable = new ResolvedDrawable();
+
+    private PinlockrStyle(Builder builder) {
+        mTextColor = builder.mTextColor;
+        mTextSize = builder.mTextSize;
+        mButtonSize = builder.mButtonSize;
+        mDeleteButtonSize = builder.mDeleteButtonSize;
+        mDeleteButtonPressedColor = builder.mDeleteButtonPressedColor;
+        mShowDeleteButton = builder.mShowDeleteButton;
+        mButtonBackgroundDrawableRes = builder.mButtonBackgroundDrawableRes;
+        mDeleteButtonDrawableRes = builder.mDeleteButtonDrawableRes;
+    }
+
+    private static PinlockrStyle intern(PinlockrStyle style) {
+        synchronized (sInterned) {
+            PinlockrStyle interned = sInterned.get(style);
+            if (interned == null) {
+                sInterned.put(style, style);
+                interned = style;
+            }
+            return interned;
+        }
+    }
+
+    public int getTextColor() {
+        return mTextColor;
+    }
+
+    public int getTextSize() {
+        return mTextSize;
+    }
+
+    public int getButtonSize() {
+        return mButtonSize;
+    }
+
+    public int getDeleteButtonSize() {
+        return mDeleteButtonSize;
+    }
+
+    public int getDeleteButtonPressedColor() {
+        return mDeleteButtonPressedColor;
+    }
+
+    public boolean isShowDeleteButton() {
+        return mShowDeleteButton;
+    }
+
+    @DrawableRes
+    public int getButtonBackgroundDrawableRes() {
+        return mButtonBackgroundDrawableRes;
+    }
+
+    @DrawableRes
+    public int getDeleteButtonDrawableRes() {
+        return mDeleteButtonDrawableRes;
+    }
+
+    /**
+     * Returns a new drawable for the button background that shares its state with every other
+     * drawable this style handed out, or null if the style doesn't set one.
+     */
+    @Nullable
+    public Drawable getButtonBackgroundDrawable(@NonNull Context context) {
+        return mButtonBackgroundDrawable.newDrawable(context, mButtonBackgroundDrawableRes);
+    }
+
+    /**
+     * Returns a new drawable for the delete button that shares its state with every other
+     * drawable this style handed out, or null if the style doesn't set one.
+     */
+    @Nullable
+    public Drawable getDeleteButtonDrawable(@NonNull Context context) {
+        return mDeleteButtonDrawable.newDrawable(context, mDeleteButtonDrawableRes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PinlockrStyle)) {
+            return false;
+        }
+        PinlockrStyle other = (PinlockrStyle) o;
+        return mTextColor == other.mTextColor
+                && mTextSize == other.mTextSize
+                && mButtonSize == other.mButtonSize
+                && mDeleteButtonSize == other.mDeleteButtonSize
+                && mDeleteButtonPressedColor == other.mDeleteButtonPressedColor
+                && mShowDeleteButton == other.mShowDeleteButton
+                && mButtonBackgroundDrawableRes == other.mButtonBackgroundDrawableRes
+                && mDeleteButtonDrawableRes == other.mDeleteButtonDrawableRes;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mTextColor;
+        result = 31 * result + mTextSize;
+        result = 31 * result + mButtonSize;
+        result = 31 * result + mDeleteButtonSize;
+        result = 31 * result + mDeleteButtonPressedColor;
+        result = 31 * result + (mShowDeleteButton ? 1 : 0);
+        result = 31 * result + mButtonBackgroundDrawableRes;
+        result = 31 * result + mDeleteButtonDrawableRes;
+        return result;
+    }
+
+    /**
+     * A drawable resource resolved once per theme, density and night mode, and shared through its
+     * constant state. The theme is only held weakly, so it doesn't keep its activity alive.
+     */
+    private static final class ResolvedDrawable {
+        private Drawable.ConstantState mState;
+        private WeakReference<Resources.Theme> mTheme;
+        private int mDensityDpi;
+        private int mNightMode;
+
+        synchronized Drawable newDrawable(Context context, @DrawableRes int res) {
+            if (res == 0) {
+                return null;
+            }
+            Resources.Theme theme = context.getTheme();
+            Configuration configuration = context.getResources().getConfiguration();
+            int nightMode = configuration.uiMode & Configuration.UI_MODE_NIGHT_MASK;
+            if (mState == null || mTheme.get() != theme
+                    || mDensityDpi != configuration.densityDpi || mNightMode != nightMode) {
+                Drawable drawable = ResourceUtils.getDrawable(context, res);
+                if (drawable == null) {
+                    return null;
+                }
+                mState = drawable.getConstantState();
+                mTheme = new WeakReference<>(theme);
+                mDensityDpi = configuration.densityDpi;
+                mNightMode = nightMode;
+                if (mState == null) {
+                    // Drawables without a constant state can't be shared
+                    return drawable;
+                }
+            }
+            return mState.newDrawable(context.getResources());
+        }
+    }
+
+    public static class Builder {
+        private int mTextColor;
+        private int mTextSize;
+        private int mButtonSize;
+        private int mDeleteButtonSize;
+        private int mDeleteButtonPressedColor;
+        private boolean mShowDeleteButton;
+        private int mButtonBackgroundDrawableRes;
+        private int mDeleteButtonDrawableRes;
+
+        /**
+         * Starts from the same defaults {@link PinlockrView} uses when no attributes are set.
+         */
+        public Builder(@NonNull Context context) {
+            mTextColor = ResourceUtils.getColor(context, R.color.white);
+            mTextSize = (int) ResourceUtils.getDimensionInPx(context, R.dimen.default_text_size);
+            mButtonSize = (int) ResourceUtils.getDimensionInPx(context, R.dimen.default_button_size);
+            mDeleteButtonSize = (int) ResourceUtils.getDimensionInPx(context, R.dimen.default_delete_button_size);
+            mDeleteButtonPressedColor = ResourceUtils.getColor(context, R.color.greyish);
+            mShowDeleteButton = true;
+        }
+
+        public Builder(@NonNull PinlockrStyle style) {
+            mTextColor = style.mTextColor;
+            mTextSize = style.mTextSize;
+            mButtonSize = style.mButtonSize;
+            mDeleteButtonSize = style.mDeleteButtonSize;
+            mDeleteButtonPressedColor = style.mDeleteButtonPressedColor;
+            mShowDeleteButton = style.mShowDeleteButton;
+            mButtonBackgroundDrawableRes = style.mButtonBackgroundDrawableRes;
+            mDeleteButtonDrawableRes = style.mDeleteButtonDrawableRes;
+        }
+
+        public Builder setTextColor(@ColorInt int textColor) {
+            mTextColor = textColor;
+            return this;
+        }
+
+        public Builder setTextSize(int textSize) {
+            mTextSize = textSize;
+            return this;
+        }
+
+        public Builder setButtonSize(int buttonSize) {
+            mButtonSize = buttonSize;
+            return this;
+        }
+
+        public Builder setDeleteButtonSize(int deleteButtonSize) {
+            mDeleteButtonSize = deleteButtonSize;
+            return this;
+        }
+
+        public Builder setDeleteButtonPressedColor(@ColorInt int deleteButtonPressedColor) {
+            mDeleteButtonPressedColor = deleteButtonPressedColor;
+            return this;
+        }
+
+        public Builder setShowDeleteButton(boolean showDeleteButton) {
+            mShowDeleteButton = showDeleteButton;
+            return this;
+        }
+
+        /**
+         * @param buttonBackgroundDrawableRes the drawable, or 0 for the default
+         */
+        public Builder setButtonBackgroundDrawable(@DrawableRes int buttonBackgroundDrawableRes) {
+            mButtonBackgroundDrawableRes = buttonBackgroundDrawableRes;
+            return this;
+        }
+
+        /**
+         * @param deleteButtonDrawableRes the drawable, or 0 for the default
+         */
+        public Builder setDeleteButtonDrawable(@DrawableRes int deleteButtonDrawableRes) {
+            mDeleteButtonDrawableRes = deleteButtonDrawableRes;
+            return this;
+        }
+
+        public PinlockrStyle build() {
+            return intern(new PinlockrStyle(this));
+        }
+    }
+}
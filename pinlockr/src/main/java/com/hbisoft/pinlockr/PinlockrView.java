@@ -2,75 +2,131 @@ package com.hbisoft.pinlockr;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.KeyEvent;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.biometric.BiometricManager;
-import androidx.biometric.BiometricPrompt;
-import androidx.core.content.ContextCompat;
-import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 
 public class PinlockrView extends RecyclerView {
+
+    @IntDef({ScrambleMode.OFF, ScrambleMode.ON_SHOW, ScrambleMode.AFTER_ATTEMPT})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ScrambleMode {
+        // Digits in the usual phone order
+        int OFF = 0;
+        // Digits shuffled every time the keypad becomes visible
+        int ON_SHOW = 1;
+        // Shuffled when the keypad becomes visible and again after every entered PIN
+        int AFTER_ATTEMPT = 2;
+    }
+
     private static final int DEFAULT_PIN_LENGTH = 4;
-    private static final int[] DEFAULT_KEY_SET = {1, 2, 3, 4, 5, 6, 7, 8, 9, 0};
-    private String mPin = "";
+    private final PinEntryEngine mEngine = new PinEntryEngine(DEFAULT_PIN_LENGTH);
     private int mPinLength;
     private int mHorizontalSpacing, mVerticalSpacing;
     private int mTextColor, mDeleteButtonPressedColor;
     private int mTextSize, mButtonSize, mDeleteButtonSize;
     private Drawable mButtonBackgroundDrawable;
     private Drawable mDeleteButtonDrawable;
+    // The resources the drawables above were resolved from, 0 for defaults and drawables set in code
+    private int mButtonBackgroundDrawableRes;
+    private int mDeleteButtonDrawableRes;
     private boolean mShowDeleteButton;
+    private final StyledResources mStyledResources = new StyledResources();
     private IndicatorDots mIndicatorDots;
     private PinlockrAdapter mAdapter;
     private PinlockrListener mPinlockrListener;
     private CustomizationOptionsBundle mCustomizationOptionsBundle;
-    private int[] mCustomKeySet;
-    private Activity mActivity;
-    private String mBiometricTitle = "Biometric Login";
-    private String mBiometricSubTitle = "Log in using your fingerprint";
-    private String mBiometricButtonText = "Cancel";
+    // The shuffled digits while scrambling, in the order of the layout's digit cells
+    private final int[] mCustomKeySet = new int[KeyPermutationPool.DIGIT_COUNT];
+    private KeypadLayout mKeypadLayout = KeypadLayout.PHONE;
+    private ItemSpaceDecoration mItemSpaceDecoration;
+    private BiometricController mBiometricController;
+    private PinlockrMetrics mMetrics;
+    private boolean mInputFramePending;
+    private PinAttemptTracker mAttemptTracker;
+    private KeyFeedback mKeyFeedback;
+    private int mScrambleMode = ScrambleMode.OFF;
+    private boolean mLockedOut = false;
+    // The hardware key whose down event was handled, so its up event is consumed too
+    private int mHandledKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+
+    private final PinAttemptTracker.OnLockoutChangedListener mLockoutListener = new PinAttemptTracker.OnLockoutChangedListener() {
+        @Override
+        public void onLockoutChanged(@NonNull PinAttemptTracker tracker) {
+            // The tracker calls this from the background thread once its journal is loaded
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                updateLockout();
+            } else {
+                post(mLockoutEndRunnable);
+            }
+        }
+    };
 
-    private PinlockrAdapter.OnNumberClickListener mOnNumberClickListener
-            = new PinlockrAdapter.OnNumberClickListener() {
+    private final Runnable mLockoutEndRunnable = new Runnable() {
         @Override
-        public void onNumberClicked(int keyValue) {
-            if (mPin.length() < getPinLength()) {
-                mPin = mPin.concat(String.valueOf(keyValue));
+        public void run() {
+            updateLockout();
+        }
+    };
 
-                if (isIndicatorDotsAttached()) {
-                    mIndicatorDots.updateDot(mPin.length());
-                }
+    private final Choreographer.FrameCallback mInputLatencyFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mInputFramePending = false;
+            long keyUpTime = mAdapter.getLastKeyUpTimeNanos();
+            if (mMetrics != null && keyUpTime > 0) {
+                mMetrics.onMetric(PinlockrMetrics.INPUT_LATENCY, frameTimeNanos - keyUpTime);
+            }
+        }
+    };
 
-                if (mPin.length() == 1) {
-                    mAdapter.setPinLength(mPin.length());
-                    mAdapter.notifyItemChanged(mAdapter.getItemCount() - 1);
-                }
+    private final PinEntryEngine.Listener mEntryListener = new PinEntryEngine.Listener() {
+        @Override
+        public void onEntryChanged(int changes, int length) {
+            if ((changes & PinEntryEngine.CHANGED_LENGTH) != 0 && isIndicatorDotsAttached()) {
+                mIndicatorDots.updateDot(length);
+            }
+            if ((changes & PinEntryEngine.CHANGED_HAS_INPUT) != 0) {
+                mAdapter.setPinLength(length);
+                mAdapter.notifyDeleteKeyChanged(PinlockrAdapter.PAYLOAD_VISIBILITY);
+            }
+        }
 
-                if (mPinlockrListener != null) {
-                    if (mPin.length() == mPinLength) {
-                        mPinlockrListener.onComplete(mPin);
-                    }
-                }
-            } else {
-                if (!isShowDeleteButton()) {
-                    resetPinlockrView();
-                    mPin = mPin.concat(String.valueOf(keyValue));
-
-                    if (isIndicatorDotsAttached()) {
-                        mIndicatorDots.updateDot(mPin.length());
-                    }
-
-                } else {
-                    if (mPinlockrListener != null) {
-                        mPinlockrListener.onComplete(mPin);
-                    }
-                }
+        @Override
+        public void onComplete(CharSequence pin) {
+            if (mPinlockrListener != null) {
+                dispatchComplete();
+            }
+            if (mScrambleMode == ScrambleMode.AFTER_ATTEMPT) {
+                scrambleKeys();
+            }
+        }
+    };
+
+    // Applies mEntryListener's dot and delete key updates once per frame
+    private final FrameCoalescingListener mEntryUpdates = new FrameCoalescingListener(mEntryListener);
+
+    private PinlockrAdapter.OnNumberClickListener mOnNumberClickListener
+            = new PinlockrAdapter.OnNumberClickListener() {
+        @Override
+        public void onNumberClicked(int keyValue) {
+            mEngine.appendDigit(keyValue);
+            if (isIndicatorDotsAttached()) {
+                onDotsUpdatedByKey();
             }
         }
     };
@@ -78,38 +134,51 @@ public class PinlockrView extends RecyclerView {
     private PinlockrAdapter.OnDeleteClickListener mOnDeleteClickListener = new PinlockrAdapter.OnDeleteClickListener() {
         @Override
         public void onDeleteClicked() {
-            if (mPin.length() > 0) {
-                mPin = mPin.substring(0, mPin.length() - 1);
-                if (isIndicatorDotsAttached()) {
-                    mIndicatorDots.updateDot(mPin.length());
-                }
-                if (mPin.length() == 0) {
-                    mAdapter.setPinLength(mPin.length());
-                    mAdapter.notifyItemChanged(mAdapter.getItemCount() - 1);
-                }
-            }
+            mEngine.delete();
         }
     };
 
 
+    private PinlockrAdapter.OnActionClickListener mOnActionClickListener = new PinlockrAdapter.OnActionClickListener() {
+        @Override
+        public void onActionClicked(int key) {
+            if (key == KeypadLayout.KEY_SUBMIT) {
+                mEngine.submit();
+            } else if (key == KeypadLayout.KEY_CLEAR) {
+                mEngine.reset();
+            }
+        }
+    };
+
     private PinlockrAdapter.OnBiometricClickListener mOnBiometricClickListener = new PinlockrAdapter.OnBiometricClickListener() {
         @Override
         public void onBiometricClicked() {
-            if (isBiometricAvailable()) {
-                showBiometricPrompt();
-            }else{
-                mPinlockrListener.onBiometricFailed(3);
-            }
+            mBiometricController.onBiometricClicked();
         }
     };
 
-    // Check if the device has a biometric sensor
-    private boolean isBiometricAvailable() {
-        BiometricManager biometricManager = BiometricManager.from(getContext());
-        int canAuthenticate = biometricManager.canAuthenticate(BiometricManager.Authenticators.BIOMETRIC_STRONG | BiometricManager.Authenticators.DEVICE_CREDENTIAL);
-        return canAuthenticate == BiometricManager.BIOMETRIC_SUCCESS;
+
+    private void dispatchComplete() {
+        if (mMetrics == null) {
+            mPinlockrListener.onComplete(mEngine.getPin());
+            return;
+        }
+        long start = System.nanoTime();
+        long keyUpTime = mAdapter.getLastKeyUpTimeNanos();
+        if (keyUpTime > 0) {
+            mMetrics.onMetric(PinlockrMetrics.CALLBACK_LATENCY, start - keyUpTime);
+        }
+        mPinlockrListener.onComplete(mEngine.getPin());
+        mMetrics.onMetric(PinlockrMetrics.CALLBACK_DISPATCH, System.nanoTime() - start);
     }
 
+    // Reports the input latency in the frame that draws the updated dots
+    private void onDotsUpdatedByKey() {
+        if (mMetrics != null && !mInputFramePending) {
+            mInputFramePending = true;
+            Choreographer.getInstance().postFrameCallback(mInputLatencyFrameCallback);
+        }
+    }
 
     public PinlockrView(Context context) {
         super(context);
@@ -122,9 +191,21 @@ public class PinlockrView extends RecyclerView {
     }
 
     private void init(AttributeSet attributeSet) {
+        mBiometricController = new BiometricController(getContext());
+        mBiometricController.setOnAvailabilityChangedListener(new BiometricController.OnAvailabilityChangedListener() {
+            @Override
+            public void onAvailabilityChanged(boolean available) {
+                mAdapter.setBiometricAvailable(available);
+            }
+        });
+
+        int keyFeedback;
+        int scrambleMode;
+        int keypadLayout;
         TypedArray typedArray = getContext().obtainStyledAttributes(attributeSet, R.styleable.PinlockrView);
         try {
             mPinLength = typedArray.getInt(R.styleable.PinlockrView_pinLength, DEFAULT_PIN_LENGTH);
+            mEngine.setPinLength(mPinLength);
             mHorizontalSpacing = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadHorizontalSpacing, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_horizontal_spacing));
             mVerticalSpacing = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadVerticalSpacing, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_vertical_spacing));
             mTextColor = typedArray.getColor(R.styleable.PinlockrView_keypadTextColor, ResourceUtils.getColor(getContext(), R.color.white));
@@ -132,13 +213,22 @@ public class PinlockrView extends RecyclerView {
             mButtonSize = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadButtonSize, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_button_size));
             mDeleteButtonSize = (int) typedArray.getDimension(R.styleable.PinlockrView_keypadDeleteButtonSize, ResourceUtils.getDimensionInPx(getContext(), R.dimen.default_delete_button_size));
             mButtonBackgroundDrawable = typedArray.getDrawable(R.styleable.PinlockrView_keypadButtonBackgroundDrawable);
+            mButtonBackgroundDrawableRes = typedArray.getResourceId(R.styleable.PinlockrView_keypadButtonBackgroundDrawable, 0);
             mDeleteButtonDrawable = typedArray.getDrawable(R.styleable.PinlockrView_keypadDeleteButtonDrawable);
+            mDeleteButtonDrawableRes = typedArray.getResourceId(R.styleable.PinlockrView_keypadDeleteButtonDrawable, 0);
             mShowDeleteButton = typedArray.getBoolean(R.styleable.PinlockrView_keypadShowDeleteButton, true);
             mDeleteButtonPressedColor = typedArray.getColor(R.styleable.PinlockrView_keypadDeleteButtonPressedColor, ResourceUtils.getColor(getContext(), R.color.greyish));
+            keyFeedback = typedArray.getInt(R.styleable.PinlockrView_keypadFeedback, KeyFeedback.NONE);
+            scrambleMode = typedArray.getInt(R.styleable.PinlockrView_keypadScramble, ScrambleMode.OFF);
+            keypadLayout = typedArray.getInt(R.styleable.PinlockrView_keypadLayout, KeypadLayout.AttrValue.PHONE);
+            mStyledResources.read(typedArray);
         } finally {
             typedArray.recycle();
         }
 
+        mEngine.setAutoReset(!mShowDeleteButton);
+        mEngine.setListener(mEntryUpdates);
+
         mCustomizationOptionsBundle = new CustomizationOptionsBundle();
         mCustomizationOptionsBundle.setTextColor(mTextColor);
         mCustomizationOptionsBundle.setTextSize(mTextSize);
@@ -149,76 +239,95 @@ public class PinlockrView extends RecyclerView {
         mCustomizationOptionsBundle.setShowDeleteButton(mShowDeleteButton);
         mCustomizationOptionsBundle.setDeleteButtonPressesColor(mDeleteButtonPressedColor);
 
+        mKeypadLayout = KeypadLayout.fromAttr(keypadLayout);
+
         initView();
+        setKeyFeedback(keyFeedback);
+        setScrambleMode(scrambleMode);
     }
 
     private void initView() {
-        setLayoutManager(new LTRGridLayoutManager(getContext(), 3));
+        LTRGridLayoutManager layoutManager = new LTRGridLayoutManager(getContext(), mKeypadLayout.getColumns());
+        setLayoutManager(layoutManager);
 
         mAdapter = new PinlockrAdapter(getContext());
         mAdapter.setOnItemClickListener(mOnNumberClickListener);
         mAdapter.setOnDeleteClickListener(mOnDeleteClickListener);
         mAdapter.setOnBiometricClickListener(mOnBiometricClickListener);
+        mAdapter.setOnActionClickListener(mOnActionClickListener);
+        mAdapter.setLayout(mKeypadLayout);
         mAdapter.setCustomizationOptions(mCustomizationOptionsBundle);
         setAdapter(mAdapter);
+        // Set after the adapter: setting the first adapter clears a pool that no other
+        // adapter uses yet, which would throw away the prewarmed holders
+        RecycledViewPool sharedPool = PinlockrViewPool.getSharedPool();
+        if (sharedPool != null) {
+            mAdapter.setViewContext(PinlockrViewPool.getSharedContext());
+            // Hands the keys back to the pool when the screen goes away
+            layoutManager.setRecycleChildrenOnDetach(true);
+            setRecycledViewPool(sharedPool);
+        } else {
+            RecycledViewPool prewarmedPool = PinlockrViewPool.takePrewarmedPool();
+            if (prewarmedPool != null) {
+                setRecycledViewPool(prewarmedPool);
+            }
+        }
+        // Rebinding a key never resizes the view. Only setKeypadLayout changes the size, and it
+        // relays out itself through setSpanCount and the new item decoration
+        setHasFixedSize(true);
 
-        addItemDecoration(new ItemSpaceDecoration(mHorizontalSpacing, mVerticalSpacing, 3, false));
+        mItemSpaceDecoration = new ItemSpaceDecoration(mHorizontalSpacing, mVerticalSpacing, mKeypadLayout.getColumns(), false);
+        addItemDecoration(mItemSpaceDecoration);
         setOverScrollMode(OVER_SCROLL_NEVER);
     }
 
-    private void showBiometricPrompt() {
-        BiometricManager biometricManager = BiometricManager.from(getContext());
-        if (biometricManager.canAuthenticate(BiometricManager.Authenticators.BIOMETRIC_STRONG) == BiometricManager.BIOMETRIC_SUCCESS) {
-
-            BiometricPrompt.PromptInfo promptInfo = new BiometricPrompt.PromptInfo.Builder()
-                    .setTitle(mBiometricTitle)
-                    .setSubtitle(mBiometricSubTitle)
-                    .setNegativeButtonText(mBiometricButtonText)
-                    .build();
-
-
-            BiometricPrompt biometricPrompt = new BiometricPrompt((FragmentActivity) mActivity,
-                    ContextCompat.getMainExecutor(getContext()),
-                    new BiometricPrompt.AuthenticationCallback() {
-                        @Override
-                        public void onAuthenticationSucceeded(
-                                @NonNull BiometricPrompt.AuthenticationResult result) {
-                            super.onAuthenticationSucceeded(result);
-                            mPinlockrListener.onBiometricSuccess();
-                        }
-
-                        @Override
-                        public void onAuthenticationError(int errorCode, @NonNull CharSequence errString) {
-                            super.onAuthenticationError(errorCode, errString);
-                            /*Toast.makeText(BiometricActivity.this, errString, Toast.LENGTH_SHORT).show();
-                            if (!errString.equals("Cancel")) {
-                                finish();
-                            }*/
-                        }
-
-                        @Override
-                        public void onAuthenticationFailed() {
-                            super.onAuthenticationFailed();
-                            /*Toast.makeText(BiometricActivity.this, "Authentication failed", Toast.LENGTH_SHORT).show();*/
-                        }
-                    });
-
-
-            biometricPrompt.authenticate(promptInfo);
-        } else {
-            /*Toast.makeText(this, "Biometric not available", Toast.LENGTH_SHORT).show();
-            finish();*/
-        }
+    /**
+     * Creates the key views of a keypad on a background thread and keeps them ready, so the
+     * next {@link PinlockrView} that is created attaches without building any views.
+     * <p>
+     * The views are created with the application context and the theme of {@code context}, so
+     * pass the Activity that is going to show the keypad (or a Context with the same theme). The
+     * Activity itself isn't kept. While the shared pool is enabled, the views go into the shared
+     * pool instead.
+     */
+    public static void prewarm(Context context) {
+        PinlockrViewPool.prewarm(context);
+    }
+
+    /**
+     * Makes every {@link PinlockrView} created from now on take its keys from one pool for the
+     * whole process. A keypad hands its keys back when it's detached, so moving between PIN
+     * screens, e.g. set, confirm and login, reuses them instead of building new ones.
+     * <p>
+     * The shared keys are built with the application context and the theme of {@code context},
+     * so they don't keep any Activity alive. Only share them between screens with that theme.
+     * Call it before the first keypad is created, on the main thread.
+     */
+    public static void enableSharedViewPool(Context context) {
+        PinlockrViewPool.enableSharedPool(context);
+    }
+
+    /**
+     * Drops the shared pool, keypads created from now on build their own keys again.
+     */
+    public static void disableSharedViewPool() {
+        PinlockrViewPool.disableSharedPool();
     }
 
     public void disableBiometricLogin(boolean shouldDisable){
         mAdapter.disableBiometric(shouldDisable);
     }
 
+    /**
+     * Binds biometric unlock to a Keystore key, see {@link BiometricCryptoBinding}. Pass null to
+     * authenticate without a crypto object again.
+     */
+    public void setBiometricCryptoBinding(@Nullable BiometricCryptoBinding cryptoBinding) {
+        mBiometricController.setCryptoBinding(cryptoBinding);
+    }
+
     public void customizeBiometricDialog(String titleText, String subTitleText, String buttonTitle){
-        mBiometricTitle = titleText;
-        mBiometricSubTitle = subTitleText;
-        mBiometricButtonText = buttonTitle;
+        mBiometricController.customizeDialog(titleText, subTitleText, buttonTitle);
     }
 
     public int getPinLength() {
@@ -226,10 +335,11 @@ public class PinlockrView extends RecyclerView {
     }
 
     public void setupPinlockrView(Activity activity, PinlockrListener pinlockrListener, IndicatorDots indicatorDots, int pinLength){
-        mActivity = activity;
+        mBiometricController.setup(activity, pinlockrListener);
         this.mPinlockrListener = pinlockrListener;
         this.mIndicatorDots = indicatorDots;
         this.mPinLength = pinLength;
+        mEngine.setPinLength(pinLength);
 
         if (isIndicatorDotsAttached()) {
             mIndicatorDots.setPinLength(pinLength);
@@ -243,8 +353,10 @@ public class PinlockrView extends RecyclerView {
 
     public void setTextColor(int textColor) {
         this.mTextColor = textColor;
+        mStyledResources.forget(StyledResources.TEXT_COLOR);
         mCustomizationOptionsBundle.setTextColor(textColor);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyNumbersChanged(PinlockrAdapter.PAYLOAD_COLOR);
+        mAdapter.notifyIconsChanged(PinlockrAdapter.PAYLOAD_COLOR);
     }
 
     public int getTextSize() {
@@ -253,8 +365,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setTextSize(int textSize) {
         this.mTextSize = textSize;
+        mStyledResources.forget(StyledResources.TEXT_SIZE);
         mCustomizationOptionsBundle.setTextSize(textSize);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyNumbersChanged(PinlockrAdapter.PAYLOAD_SIZE);
     }
 
     public int getButtonSize() {
@@ -263,8 +376,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setButtonSize(int buttonSize) {
         this.mButtonSize = buttonSize;
+        mStyledResources.forget(StyledResources.BUTTON_SIZE);
         mCustomizationOptionsBundle.setButtonSize(buttonSize);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyNumbersChanged(PinlockrAdapter.PAYLOAD_SIZE);
     }
 
     public Drawable getButtonBackgroundDrawable() {
@@ -273,8 +387,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setButtonBackgroundDrawable(Drawable buttonBackgroundDrawable) {
         this.mButtonBackgroundDrawable = buttonBackgroundDrawable;
+        mButtonBackgroundDrawableRes = 0;
         mCustomizationOptionsBundle.setButtonBackgroundDrawable(buttonBackgroundDrawable);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyNumbersChanged(PinlockrAdapter.PAYLOAD_DRAWABLE);
     }
 
     public Drawable getDeleteButtonDrawable() {
@@ -283,8 +398,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setDeleteButtonDrawable(Drawable deleteBackgroundDrawable) {
         this.mDeleteButtonDrawable = deleteBackgroundDrawable;
+        mDeleteButtonDrawableRes = 0;
         mCustomizationOptionsBundle.setDeleteButtonDrawable(deleteBackgroundDrawable);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyIconsChanged(PinlockrAdapter.PAYLOAD_DRAWABLE);
     }
 
     public int getDeleteButtonSize() {
@@ -293,8 +409,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setDeleteButtonSize(int deleteButtonSize) {
         this.mDeleteButtonSize = deleteButtonSize;
+        mStyledResources.forget(StyledResources.DELETE_BUTTON_SIZE);
         mCustomizationOptionsBundle.setDeleteButtonSize(deleteButtonSize);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyIconsChanged(PinlockrAdapter.PAYLOAD_SIZE);
     }
 
     public boolean isShowDeleteButton() {
@@ -303,8 +420,9 @@ public class PinlockrView extends RecyclerView {
 
     public void setShowDeleteButton(boolean showDeleteButton) {
         this.mShowDeleteButton = showDeleteButton;
+        mEngine.setAutoReset(!showDeleteButton);
         mCustomizationOptionsBundle.setShowDeleteButton(showDeleteButton);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyDeleteKeyChanged(PinlockrAdapter.PAYLOAD_VISIBILITY);
     }
 
     public int getDeleteButtonPressedColor() {
@@ -313,18 +431,355 @@ public class PinlockrView extends RecyclerView {
 
     public void setDeleteButtonPressedColor(int deleteButtonPressedColor) {
         this.mDeleteButtonPressedColor = deleteButtonPressedColor;
+        mStyledResources.forget(StyledResources.DELETE_BUTTON_PRESSED_COLOR);
+        // The pressed color isn't drawn by any key, so there is nothing to rebind
         mCustomizationOptionsBundle.setDeleteButtonPressesColor(deleteButtonPressedColor);
-        mAdapter.notifyDataSetChanged();
     }
 
-    public void resetPinlockrView() {
-        mPin = "";
-        mAdapter.setPinLength(mPin.length());
-        mAdapter.notifyItemChanged(mAdapter.getItemCount() - 1);
+    /**
+     * Applies every value of {@code style} at once. Only the values that differ from the current
+     * ones are updated, with a single rebind of the keys they affect. A drawable the style doesn't
+     * set goes back to the default.
+     */
+    public void applyStyle(@NonNull PinlockrStyle style) {
+        mStyledResources.forgetAll();
+
+        int numberChanges = 0;
+        int iconChanges = 0;
+        if (style.getTextColor() != mTextColor) {
+            mTextColor = style.getTextColor();
+            mCustomizationOptionsBundle.setTextColor(mTextColor);
+            numberChanges |= PinlockrAdapter.PAYLOAD_COLOR;
+            iconChanges |= PinlockrAdapter.PAYLOAD_COLOR;
+        }
+        if (style.getTextSize() != mTextSize || style.getButtonSize() != mButtonSize) {
+            mTextSize = style.getTextSize();
+            mButtonSize = style.getButtonSize();
+            mCustomizationOptionsBundle.setTextSize(mTextSize);
+            mCustomizationOptionsBundle.setButtonSize(mButtonSize);
+            numberChanges |= PinlockrAdapter.PAYLOAD_SIZE;
+        }
+        if (style.getDeleteButtonSize() != mDeleteButtonSize) {
+            mDeleteButtonSize = style.getDeleteButtonSize();
+            mCustomizationOptionsBundle.setDeleteButtonSize(mDeleteButtonSize);
+            iconChanges |= PinlockrAdapter.PAYLOAD_SIZE;
+        }
+        if (style.isShowDeleteButton() != mShowDeleteButton) {
+            mShowDeleteButton = style.isShowDeleteButton();
+            mEngine.setAutoReset(!mShowDeleteButton);
+            mCustomizationOptionsBundle.setShowDeleteButton(mShowDeleteButton);
+            iconChanges |= PinlockrAdapter.PAYLOAD_VISIBILITY;
+        }
+        mDeleteButtonPressedColor = style.getDeleteButtonPressedColor();
+        mCustomizationOptionsBundle.setDeleteButtonPressesColor(mDeleteButtonPressedColor);
+
+        // Compared with what the view shows now, which a setter may have changed since the last style
+        int backgroundRes = style.getButtonBackgroundDrawableRes();
+        if (backgroundRes == 0 ? mButtonBackgroundDrawable != null : backgroundRes != mButtonBackgroundDrawableRes) {
+            mButtonBackgroundDrawable = style.getButtonBackgroundDrawable(getContext());
+            mButtonBackgroundDrawableRes = backgroundRes;
+            mCustomizationOptionsBundle.setButtonBackgroundDrawable(mButtonBackgroundDrawable);
+            numberChanges |= PinlockrAdapter.PAYLOAD_DRAWABLE;
+        }
+        int deleteRes = style.getDeleteButtonDrawableRes();
+        if (deleteRes == 0 ? mDeleteButtonDrawable != null : deleteRes != mDeleteButtonDrawableRes) {
+            mDeleteButtonDrawable = style.getDeleteButtonDrawable(getContext());
+            mDeleteButtonDrawableRes = deleteRes;
+            mCustomizationOptionsBundle.setDeleteButtonDrawable(mDeleteButtonDrawable);
+            iconChanges |= PinlockrAdapter.PAYLOAD_DRAWABLE;
+        }
 
-        if (mIndicatorDots != null) {
-            mIndicatorDots.updateDot(mPin.length());
+        if (numberChanges != 0) {
+            mAdapter.notifyNumbersChanged(numberChanges);
         }
+        if (iconChanges != 0) {
+            mAdapter.notifyIconsChanged(iconChanges);
+        }
+    }
+
+    /**
+     * Starts reporting timings of the keypad to {@code metrics}, or stops when it's null.
+     * Nothing is measured while no metrics are set.
+     *
+     * @see PinlockrMetricsRecorder
+     */
+    public void setMetrics(@Nullable PinlockrMetrics metrics) {
+        this.mMetrics = metrics;
+        mAdapter.setMetrics(metrics);
+        mBiometricController.setMetrics(metrics);
+        if (metrics == null && mInputFramePending) {
+            Choreographer.getInstance().removeFrameCallback(mInputLatencyFrameCallback);
+            mInputFramePending = false;
+        }
+    }
+
+    /**
+     * Plays a click sound, haptic feedback or both when a key is pressed. Off by default.
+     *
+     * @param flags a combination of {@link KeyFeedback#SOUND} and {@link KeyFeedback#HAPTIC},
+     *              or {@link KeyFeedback#NONE}
+     */
+    public void setKeyFeedback(int flags) {
+        if (flags == getKeyFeedback()) {
+            return;
+        }
+        if (mKeyFeedback != null) {
+            mKeyFeedback.release();
+        }
+        mKeyFeedback = flags != KeyFeedback.NONE ? new KeyFeedback(flags) : null;
+        if (mKeyFeedback != null && isAttachedToWindow()) {
+            mKeyFeedback.load(getContext());
+        }
+        mAdapter.setKeyFeedback(mKeyFeedback);
+    }
+
+    public int getKeyFeedback() {
+        return mKeyFeedback != null ? mKeyFeedback.getFlags() : KeyFeedback.NONE;
+    }
+
+    /**
+     * Changes the key grid, e.g. to {@link KeypadLayout#WIDE} in landscape. The layout manager,
+     * the spacing and the keys are all updated from {@code keypadLayout}. Default is
+     * {@link KeypadLayout#PHONE}.
+     */
+    public void setKeypadLayout(@NonNull KeypadLayout keypadLayout) {
+        if (mKeypadLayout == keypadLayout) {
+            return;
+        }
+        mKeypadLayout = keypadLayout;
+        ((LTRGridLayoutManager) getLayoutManager()).setSpanCount(keypadLayout.getColumns());
+        removeItemDecoration(mItemSpaceDecoration);
+        mItemSpaceDecoration = new ItemSpaceDecoration(mHorizontalSpacing, mVerticalSpacing, keypadLayout.getColumns(), false);
+        addItemDecoration(mItemSpaceDecoration);
+        mAdapter.setLayout(keypadLayout);
+        if (mScrambleMode != ScrambleMode.OFF && isShown()) {
+            scrambleKeys();
+        }
+    }
+
+    @NonNull
+    public KeypadLayout getKeypadLayout() {
+        return mKeypadLayout;
+    }
+
+    /**
+     * Shuffles the digits on the keypad, so someone watching can't tell the PIN from where the
+     * taps land. Only the labels of the number keys change, the keys aren't recreated or laid
+     * out again.
+     */
+    public void setScrambleMode(@ScrambleMode int scrambleMode) {
+        if (mScrambleMode == scrambleMode) {
+            return;
+        }
+        mScrambleMode = scrambleMode;
+        if (scrambleMode == ScrambleMode.OFF) {
+            mAdapter.resetKeyValues();
+        } else {
+            KeyPermutationPool.shared().prefill();
+            if (isShown()) {
+                scrambleKeys();
+            }
+        }
+    }
+
+    public
+    @ScrambleMode
+    int getScrambleMode() {
+        return mScrambleMode;
+    }
+
+    private void scrambleKeys() {
+        KeyPermutationPool.shared().next(mCustomKeySet);
+        mAdapter.setKeyValues(mCustomKeySet);
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        if (isVisible && mScrambleMode != ScrambleMode.OFF) {
+            scrambleKeys();
+        }
+    }
+
+    /**
+     * Disables the keys while {@code attemptTracker} reports a lockout, and enables them again
+     * when it ends. They are also disabled until the tracker has read its journal, which doesn't
+     * block. Pass null to stop.
+     */
+    public void setAttemptTracker(@Nullable PinAttemptTracker attemptTracker) {
+        if (mAttemptTracker != null) {
+            mAttemptTracker.removeOnLockoutChangedListener(mLockoutListener);
+        }
+        mAttemptTracker = attemptTracker;
+        if (attemptTracker != null && isAttachedToWindow()) {
+            attemptTracker.addOnLockoutChangedListener(mLockoutListener);
+        }
+        updateLockout();
+    }
+
+    private void updateLockout() {
+        removeCallbacks(mLockoutEndRunnable);
+        long remaining = mAttemptTracker != null ? mAttemptTracker.remainingLockout() : 0;
+        if (remaining > 0) {
+            mEngine.reset();
+            postDelayed(mLockoutEndRunnable, remaining);
+        }
+        // Until the tracker has read its journal the lockout is unknown, so the keys stay off
+        boolean unknown = mAttemptTracker != null && !mAttemptTracker.isLoaded();
+        mLockedOut = unknown || remaining > 0;
+        mAdapter.setKeysEnabled(!mLockedOut);
+    }
+
+    /**
+     * Types digits, deletes and submits from a hardware keyboard, numpad or remote while the
+     * keypad or one of its keys has focus. It's handled here rather than in onKeyDown, since the
+     * focused key would otherwise get the event first. Arrow keys still move the focus between
+     * the keys.
+     */
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        int key = HardwareKeys.map(event, getFocusedChild() == null);
+        if (key != HardwareKeys.NONE) {
+            if (event.getAction() == KeyEvent.ACTION_DOWN) {
+                if (handleKeyDown(key, event)) {
+                    mHandledKeyCode = event.getKeyCode();
+                    return true;
+                }
+            } else if (event.getAction() == KeyEvent.ACTION_UP && event.getKeyCode() == mHandledKeyCode) {
+                // Its down event was handled here, so the up event doesn't reach a focused key
+                mHandledKeyCode = KeyEvent.KEYCODE_UNKNOWN;
+                return true;
+            }
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    // Returns false for the events that are ignored, during a lockout or repeats of a held key
+    private boolean handleKeyDown(int key, KeyEvent event) {
+        if (mLockedOut) {
+            return false;
+        }
+        if (key == HardwareKeys.DELETE) {
+            // Holding delete keeps deleting
+            mEngine.delete();
+        } else if (event.getRepeatCount() != 0) {
+            return false;
+        } else if (key == HardwareKeys.SUBMIT) {
+            mEngine.submit();
+        } else {
+            mOnNumberClickListener.onNumberClicked(key);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mKeyFeedback != null) {
+            mKeyFeedback.load(getContext());
+        }
+        if (mAttemptTracker != null) {
+            mAttemptTracker.addOnLockoutChangedListener(mLockoutListener);
+            updateLockout();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mEntryUpdates.flush();
+        if (mKeyFeedback != null) {
+            mKeyFeedback.release();
+        }
+        if (mAttemptTracker != null) {
+            // The tracker usually outlives the screen, so it mustn't keep the view alive
+            mAttemptTracker.removeOnLockoutChangedListener(mLockoutListener);
+        }
+        removeCallbacks(mLockoutEndRunnable);
+    }
+
+    /**
+     * Only called when the host handles configuration changes itself through
+     * {@code android:configChanges}. The colors and sizes that came from resources are resolved
+     * again, and only the keys whose values changed are rebound. Values set in code or with
+     * {@link #applyStyle(PinlockrStyle)} are kept.
+     */
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        Context context = getContext();
+        int numberChanges = 0;
+        int iconChanges = 0;
+        int textColor = mStyledResources.getColor(context, StyledResources.TEXT_COLOR, mTextColor);
+        if (textColor != mTextColor) {
+            mTextColor = textColor;
+            mCustomizationOptionsBundle.setTextColor(textColor);
+            numberChanges |= PinlockrAdapter.PAYLOAD_COLOR;
+            iconChanges |= PinlockrAdapter.PAYLOAD_COLOR;
+        }
+        int textSize = mStyledResources.getDimension(context, StyledResources.TEXT_SIZE, mTextSize);
+        int buttonSize = mStyledResources.getDimension(context, StyledResources.BUTTON_SIZE, mButtonSize);
+        if (textSize != mTextSize || buttonSize != mButtonSize) {
+            mTextSize = textSize;
+            mButtonSize = buttonSize;
+            mCustomizationOptionsBundle.setTextSize(textSize);
+            mCustomizationOptionsBundle.setButtonSize(buttonSize);
+            numberChanges |= PinlockrAdapter.PAYLOAD_SIZE;
+        }
+        int deleteButtonSize = mStyledResources.getDimension(context, StyledResources.DELETE_BUTTON_SIZE, mDeleteButtonSize);
+        if (deleteButtonSize != mDeleteButtonSize) {
+            mDeleteButtonSize = deleteButtonSize;
+            mCustomizationOptionsBundle.setDeleteButtonSize(deleteButtonSize);
+            iconChanges |= PinlockrAdapter.PAYLOAD_SIZE;
+        }
+        mDeleteButtonPressedColor = mStyledResources.getColor(context, StyledResources.DELETE_BUTTON_PRESSED_COLOR, mDeleteButtonPressedColor);
+        mCustomizationOptionsBundle.setDeleteButtonPressesColor(mDeleteButtonPressedColor);
+
+        if (numberChanges != 0) {
+            mAdapter.notifyNumbersChanged(numberChanges);
+        }
+        if (iconChanges != 0) {
+            mAdapter.notifyIconsChanged(iconChanges);
+        }
+    }
+
+    /**
+     * Keeps the entry when the Activity is recreated, e.g. on rotation. Only the masked digits
+     * are saved, see {@link EntryMask}, and like any view state it needs the view to have an id.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        PinEntrySavedState state = new PinEntrySavedState(super.onSaveInstanceState());
+        state.mEntry = mEngine.saveEntry();
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof PinEntrySavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        PinEntrySavedState savedState = (PinEntrySavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        // Not reported as complete, the PIN was already handled before the state was saved
+        mEngine.restoreEntry(savedState.mEntry);
+        savedState.mEntry = null;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mMetrics == null) {
+            super.onLayout(changed, l, t, r, b);
+            return;
+        }
+        long start = System.nanoTime();
+        super.onLayout(changed, l, t, r, b);
+        mMetrics.onMetric(PinlockrMetrics.LAYOUT_COST, System.nanoTime() - start);
+    }
+
+    public void resetPinlockrView() {
+        mEngine.reset();
     }
 
     public boolean isIndicatorDotsAttached() {
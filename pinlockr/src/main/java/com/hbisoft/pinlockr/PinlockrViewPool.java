@@ -0,0 +1,117 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Holds the view holders created ahead of time by {@link PinlockrView#prewarm(Context)}, and the
+ * pool shared by every keypad after {@link PinlockrView#enableSharedViewPool(Context)}.
+ */
+final class PinlockrViewPool {
+
+    // Keypads that can be on screen at once, e.g. a screen and a re-auth dialog over it
+    private static final int SHARED_KEYPAD_COUNT = 2;
+
+    private static RecyclerView.RecycledViewPool sPrewarmedPool;
+    private static RecyclerView.RecycledViewPool sSharedPool;
+    private static Context sSharedContext;
+
+    private PinlockrViewPool() {
+        throw new AssertionError();
+    }
+
+    static void prewarm(Context context) {
+        // Prewarming fills the shared pool while there is one
+        RecyclerView.RecycledViewPool sharedPool = sSharedPool;
+        // The pool is static and may never be taken, so nothing in it may hold on to an activity
+        Context viewContext = sharedPool != null ? sSharedContext : newThemedApplicationContext(context);
+        Executor mainExecutor = ContextCompat.getMainExecutor(viewContext);
+        PinlockrExecutors.background().execute(() -> {
+            PinlockrAdapter adapter = new PinlockrAdapter(viewContext);
+            FrameLayout parent = new FrameLayout(viewContext);
+            int itemCount = adapter.getItemCount();
+            RecyclerView.ViewHolder[] holders = new RecyclerView.ViewHolder[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                holders[i] = adapter.createViewHolder(parent, adapter.getItemViewType(i));
+            }
+
+            mainExecutor.execute(() -> {
+                RecyclerView.RecycledViewPool pool = sharedPool;
+                if (pool == null) {
+                    pool = new RecyclerView.RecycledViewPool();
+                    PinlockrAdapter.configurePool(pool, 1);
+                } else if (pool != sSharedPool) {
+                    // Disabled in the meantime
+                    return;
+                }
+                // Holders beyond the pool's capacity are dropped
+                for (RecyclerView.ViewHolder holder : holders) {
+                    pool.putRecycledView(holder);
+                }
+                if (sharedPool == null) {
+                    sPrewarmedPool = pool;
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns the prewarmed pool, if there is one, and forgets it so it's used only once.
+     * Must be called on the main thread.
+     */
+    static RecyclerView.RecycledViewPool takePrewarmedPool() {
+        RecyclerView.RecycledViewPool pool = sPrewarmedPool;
+        sPrewarmedPool = null;
+        return pool;
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    static void enableSharedPool(Context context) {
+        // The shared keys outlive every screen
+        sSharedContext = newThemedApplicationContext(context);
+        if (sSharedPool == null) {
+            sSharedPool = new RecyclerView.RecycledViewPool();
+            PinlockrAdapter.configurePool(sSharedPool, SHARED_KEYPAD_COUNT);
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    static void disableSharedPool() {
+        if (sSharedPool != null) {
+            sSharedPool.clear();
+            sSharedPool = null;
+            sSharedContext = null;
+        }
+    }
+
+    /**
+     * Returns the shared pool, null unless it was enabled. Must be called on the main thread.
+     */
+    static RecyclerView.RecycledViewPool getSharedPool() {
+        return sSharedPool;
+    }
+
+    // The application context, with the theme of context for the key backgrounds
+    private static Context newThemedApplicationContext(Context context) {
+        ContextThemeWrapper themedContext = new ContextThemeWrapper(context.getApplicationContext(), 0);
+        themedContext.getTheme().setTo(context.getTheme());
+        return themedContext;
+    }
+
+    /**
+     * Returns the context the keys of the shared pool are built with.
+     */
+    static Context getSharedContext() {
+        return sSharedContext;
+    }
+}
@@ -0,0 +1,66 @@
+package com.hbisoft.pinlockr;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+
+/**
+ * Remembers which color and dimension resources the styled keypad values came from, so a view
+ * that isn't recreated on a configuration change (the host handles it through
+ * {@code android:configChanges}) can resolve them again for the new night mode, density or
+ * font scale.
+ */
+final class StyledResources {
+
+    static final int TEXT_COLOR = 0;
+    static final int DELETE_BUTTON_PRESSED_COLOR = 1;
+    static final int TEXT_SIZE = 2;
+    static final int BUTTON_SIZE = 3;
+    static final int DELETE_BUTTON_SIZE = 4;
+
+    // 0 where a value has no resource to resolve again
+    private final int[] mResIds = new int[5];
+
+    void read(TypedArray typedArray) {
+        mResIds[TEXT_COLOR] = getResourceId(typedArray, R.styleable.PinlockrView_keypadTextColor, R.color.white);
+        mResIds[DELETE_BUTTON_PRESSED_COLOR] = getResourceId(typedArray, R.styleable.PinlockrView_keypadDeleteButtonPressedColor, R.color.greyish);
+        mResIds[TEXT_SIZE] = getResourceId(typedArray, R.styleable.PinlockrView_keypadTextSize, R.dimen.default_text_size);
+        mResIds[BUTTON_SIZE] = getResourceId(typedArray, R.styleable.PinlockrView_keypadButtonSize, R.dimen.default_button_size);
+        mResIds[DELETE_BUTTON_SIZE] = getResourceId(typedArray, R.styleable.PinlockrView_keypadDeleteButtonSize, R.dimen.default_delete_button_size);
+    }
+
+    private static int getResourceId(TypedArray typedArray, int index, int defaultRes) {
+        // A literal like #FFFFFF or 24sp has no resource
+        return typedArray.hasValue(index) ? typedArray.getResourceId(index, 0) : defaultRes;
+    }
+
+    /**
+     * Stops resolving {@code value} again, once it was set in code.
+     */
+    void forget(int value) {
+        mResIds[value] = 0;
+    }
+
+    void forgetAll() {
+        for (int i = 0; i < mResIds.length; i++) {
+            mResIds[i] = 0;
+        }
+    }
+
+    /**
+     * Resolves the color {@code value} again, or returns {@code current} if it didn't come from
+     * a resource.
+     */
+    int getColor(Context context, int value, int current) {
+        int resId = mResIds[value];
+        return resId != 0 ? ResourceUtils.getColor(context, resId) : current;
+    }
+
+    /**
+     * Resolves the dimension {@code value} again, or returns {@code current} if it didn't come
+     * from a resource.
+     */
+    int getDimension(Context context, int value, int current) {
+        int resId = mResIds[value];
+        return resId != 0 ? (int) ResourceUtils.getDimensionInPx(context, resId) : current;
+    }
+}
@@ -0,0 +1,148 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+public class BiometricCryptoBindingTest {
+
+    /**
+     * Stands in for the AndroidKeyStore with a plain JCA key, which doesn't need authentication.
+     */
+    private static class LocalKeyProvider implements BiometricCryptoBinding.KeyProvider {
+        SecretKey mKey;
+        boolean mInvalidated;
+        int mDeleted;
+
+        @Override
+        public SecretKey getOrCreateKey() throws GeneralSecurityException {
+            if (mInvalidated) {
+                throw new InvalidKeyException("Key permanently invalidated");
+            }
+            if (mKey == null) {
+                KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+                keyGenerator.init(256);
+                mKey = keyGenerator.generateKey();
+            }
+            return mKey;
+        }
+
+        @Override
+        public void deleteKey() {
+            mDeleted++;
+            mKey = null;
+        }
+    }
+
+    private final LocalKeyProvider mKeyProvider = new LocalKeyProvider();
+    private final List<byte[]> mWrapped = new ArrayList<>();
+    private final List<byte[]> mUnwrapped = new ArrayList<>();
+    private int mInvalidations;
+    private BiometricCryptoBinding mBinding;
+
+    @Before
+    public void setUp() {
+        mBinding = new BiometricCryptoBinding(mKeyProvider);
+        mBinding.setOnResultListener(Runnable::run, new BiometricCryptoBinding.OnResultListener() {
+            @Override
+            public void onSecretWrapped(byte[] wrapped) {
+                mWrapped.add(wrapped);
+            }
+
+            @Override
+            public void onSecretUnwrapped(byte[] secret) {
+                mUnwrapped.add(secret);
+            }
+
+            @Override
+            public void onKeyInvalidated() {
+                mInvalidations++;
+            }
+        });
+    }
+
+    // Waits for the background preparation, the background executor runs tasks in order
+    private Cipher awaitPreparedCipher() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        PinlockrExecutors.background().execute(latch::countDown);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return mBinding.getPreparedCipher();
+    }
+
+    @Test
+    public void nothingToWrapOrUnwrap_hasNoCipher() throws InterruptedException {
+        assertNull(awaitPreparedCipher());
+    }
+
+    @Test
+    public void wrapThenUnwrap_returnsTheSecret() throws Exception {
+        byte[] secret = {1, 2, 3, 4, 5};
+
+        mBinding.wrap(secret);
+        mBinding.finish(awaitPreparedCipher());
+        assertEquals(1, mWrapped.size());
+
+        // After wrapping, the binding prepares to unwrap on its own
+        mBinding.finish(awaitPreparedCipher());
+        mBinding.finish(awaitPreparedCipher());
+
+        assertEquals(2, mUnwrapped.size());
+        assertArrayEquals(secret, mUnwrapped.get(0));
+        assertArrayEquals(secret, mUnwrapped.get(1));
+    }
+
+    @Test
+    public void tamperedSecret_isRejected() throws Exception {
+        mBinding.wrap(new byte[]{1, 2, 3});
+        mBinding.finish(awaitPreparedCipher());
+        byte[] wrapped = mWrapped.get(0);
+        wrapped[wrapped.length - 1] ^= 1;
+
+        mBinding.unwrap(wrapped);
+        try {
+            mBinding.finish(awaitPreparedCipher());
+            fail();
+        } catch (GeneralSecurityException expected) {
+        }
+        assertTrue(mUnwrapped.isEmpty());
+        // Prepared again for the next attempt
+        assertNotNull(awaitPreparedCipher());
+    }
+
+    @Test
+    public void cipherFromElsewhere_isRejected() throws Exception {
+        mBinding.wrap(new byte[]{1});
+        awaitPreparedCipher();
+
+        try {
+            mBinding.finish(Cipher.getInstance("AES/GCM/NoPadding"));
+            fail();
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void invalidatedKey_isDeletedAndReported() throws Exception {
+        mBinding.wrap(new byte[]{1, 2, 3});
+        mBinding.finish(awaitPreparedCipher());
+
+        mKeyProvider.mInvalidated = true;
+        mBinding.unwrap(mWrapped.get(0));
+
+        assertNull(awaitPreparedCipher());
+        assertEquals(1, mInvalidations);
+        assertEquals(1, mKeyProvider.mDeleted);
+    }
+}
@@ -0,0 +1,132 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilePinStoreTest {
+
+    private static final byte[] VERIFIER = {1, 2, 3, 4};
+
+    private final List<Runnable> mPending = new ArrayList<>();
+    private File mFile;
+    private File mTempFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pinlockr", ".pin");
+        assertTrue(mFile.delete());
+        mTempFile = new File(mFile.getPath() + ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        mTempFile.delete();
+    }
+
+    private FilePinStore newStore() {
+        return new FilePinStore(mFile, mPending::add);
+    }
+
+    private void runPending() {
+        while (!mPending.isEmpty()) {
+            mPending.remove(0).run();
+        }
+    }
+
+    private void storePin() {
+        FilePinStore store = newStore();
+        assertTrue(store.edit().putVerifier(VERIFIER).putLong("setAt", 1).commit());
+        mPending.clear();
+    }
+
+    @Test
+    public void getters_beforeTheLoad_dontWaitForIt() {
+        storePin();
+        FilePinStore store = newStore();
+
+        assertFalse(store.isLoaded());
+        assertFalse(store.hasPin());
+
+        runPending();
+        assertTrue(store.isLoaded());
+        assertArrayEquals(VERIFIER, store.getVerifier());
+    }
+
+    @Test
+    public void apply_beforeTheLoad_isKeptOnTopOfTheFile() {
+        storePin();
+        FilePinStore store = newStore();
+
+        store.edit().putLong("attempts", 2).apply();
+        assertEquals(2, store.getLong("attempts", 0));
+
+        runPending();
+        assertArrayEquals(VERIFIER, store.getVerifier());
+        assertEquals(1, store.getLong("setAt", 0));
+        assertEquals(2, store.getLong("attempts", 0));
+    }
+
+    @Test
+    public void apply_inQuickSuccession_writesOnce() {
+        FilePinStore store = newStore();
+        runPending();
+
+        store.edit().putVerifier(VERIFIER).apply();
+        store.edit().putLong("setAt", 1).apply();
+        store.edit().putLong("setAt", 2).apply();
+        runPending();
+
+        assertEquals(1, store.getDiskWriteCount());
+        FilePinStore reloaded = newStore();
+        runPending();
+        assertArrayEquals(VERIFIER, reloaded.getVerifier());
+        assertEquals(2, reloaded.getLong("setAt", 0));
+    }
+
+    @Test
+    public void failedWrite_keepsTheOldFile() {
+        storePin();
+        FilePinStore store = newStore();
+        runPending();
+        // The temporary file can't be created, so the write fails before the rename
+        assertTrue(mTempFile.mkdir());
+
+        assertFalse(store.edit().clear().commit());
+
+        FilePinStore reloaded = newStore();
+        runPending();
+        assertArrayEquals(VERIFIER, reloaded.getVerifier());
+    }
+
+    @Test
+    public void write_leavesNoTemporaryFile() {
+        storePin();
+
+        assertTrue(mFile.exists());
+        assertFalse(mTempFile.exists());
+    }
+
+    @Test
+    public void hugeVerifierLength_isTreatedAsNoPin() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile))) {
+            out.writeInt(1);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        FilePinStore store = newStore();
+        runPending();
+
+        assertTrue(store.isLoaded());
+        assertFalse(store.hasPin());
+    }
+}
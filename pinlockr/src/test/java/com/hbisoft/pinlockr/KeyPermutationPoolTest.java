@@ -0,0 +1,82 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeyPermutationPoolTest {
+
+    private final List<Runnable> mPending = new ArrayList<>();
+    private final KeyPermutationPool mPool = new KeyPermutationPool(mPending::add, 4, new Random(42));
+
+    private void runPending() {
+        while (!mPending.isEmpty()) {
+            mPending.remove(0).run();
+        }
+    }
+
+    private static void assertPermutation(int[] digits) {
+        int[] sorted = digits.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, sorted);
+    }
+
+    @Test
+    public void prefill_fillsToCapacityInTheBackground() {
+        mPool.prefill();
+        assertEquals(0, mPool.size());
+
+        runPending();
+        assertEquals(4, mPool.size());
+
+        // Already full, nothing to schedule
+        mPool.prefill();
+        assertTrue(mPending.isEmpty());
+    }
+
+    @Test
+    public void next_returnsPermutations() {
+        mPool.prefill();
+        runPending();
+
+        int[] digits = new int[KeyPermutationPool.DIGIT_COUNT];
+        boolean reordered = false;
+        for (int i = 0; i < 20; i++) {
+            mPool.next(digits);
+            assertPermutation(digits);
+            reordered |= !Arrays.equals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, digits);
+            runPending();
+        }
+        assertTrue(reordered);
+    }
+
+    @Test
+    public void next_whenEmpty_shufflesOnTheCallersThread() {
+        int[] digits = new int[KeyPermutationPool.DIGIT_COUNT];
+        mPool.next(digits);
+
+        assertPermutation(digits);
+        // And refills for the next time
+        assertEquals(1, mPending.size());
+    }
+
+    @Test
+    public void next_refillsWhenHalfEmpty() {
+        mPool.prefill();
+        runPending();
+        int[] digits = new int[KeyPermutationPool.DIGIT_COUNT];
+
+        mPool.next(digits);
+        assertTrue(mPending.isEmpty());
+        mPool.next(digits);
+        assertEquals(1, mPending.size());
+
+        runPending();
+        assertEquals(4, mPool.size());
+    }
+}
@@ -0,0 +1,90 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeypadLayoutTest {
+
+    @Test
+    public void phone_matchesTheClassicKeypad() {
+        KeypadLayout layout = KeypadLayout.PHONE;
+
+        assertEquals(3, layout.getColumns());
+        assertEquals(4, layout.getRows());
+        assertEquals(12, layout.getKeyCount());
+        assertEquals(9, layout.getBiometricPosition());
+        assertEquals(11, layout.getDeletePosition());
+        assertEquals(0, layout.getKey(10));
+        // The tenth digit cell is the 0 below 8
+        assertEquals(10, layout.getDigitPosition(9));
+    }
+
+    @Test
+    public void predefinedLayouts_haveEveryDigitOnce() {
+        for (KeypadLayout layout : new KeypadLayout[]{KeypadLayout.PHONE, KeypadLayout.WIDE, KeypadLayout.EXTENDED}) {
+            boolean[] seen = new boolean[10];
+            for (int i = 0; i < 10; i++) {
+                int key = layout.getKey(layout.getDigitPosition(i));
+                assertFalse(seen[key]);
+                seen[key] = true;
+            }
+        }
+    }
+
+    @Test
+    public void extended_hasAnExtraRow() {
+        KeypadLayout layout = KeypadLayout.EXTENDED;
+
+        assertEquals(5, layout.getRows());
+        assertEquals(KeypadLayout.KEY_CLEAR, layout.getKey(12));
+        assertEquals(KeypadLayout.KEY_EMPTY, layout.getKey(13));
+        assertEquals(KeypadLayout.KEY_SUBMIT, layout.getKey(14));
+    }
+
+    @Test
+    public void withoutBiometricOrDelete_reportsNoPosition() {
+        KeypadLayout layout = new KeypadLayout(5, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0);
+
+        assertEquals(2, layout.getRows());
+        assertEquals(-1, layout.getBiometricPosition());
+        assertEquals(-1, layout.getDeletePosition());
+    }
+
+    @Test
+    public void copyKeys_isIndependentOfTheLayout() {
+        int[] keys = new int[KeypadLayout.PHONE.getKeyCount()];
+        KeypadLayout.PHONE.copyKeys(keys);
+        keys[0] = 7;
+
+        assertEquals(1, KeypadLayout.PHONE.getKey(0));
+    }
+
+    @Test
+    public void invalidKeys_areRejected() {
+        // Missing digit
+        assertRejected(1, 2, 3, 4, 5, 6, 7, 8, 9, KeypadLayout.KEY_EMPTY);
+        // Repeated digit
+        assertRejected(1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1);
+        // Second delete key
+        assertRejected(1, 2, 3, 4, 5, 6, 7, 8, 9, 0, KeypadLayout.KEY_DELETE, KeypadLayout.KEY_DELETE);
+        // Unknown key
+        assertRejected(1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 10);
+    }
+
+    private static void assertRejected(int... keys) {
+        try {
+            new KeypadLayout(3, keys);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void fromAttr_mapsTheAttributeValues() {
+        assertSame(KeypadLayout.PHONE, KeypadLayout.fromAttr(KeypadLayout.AttrValue.PHONE));
+        assertSame(KeypadLayout.WIDE, KeypadLayout.fromAttr(KeypadLayout.AttrValue.WIDE));
+        assertSame(KeypadLayout.EXTENDED, KeypadLayout.fromAttr(KeypadLayout.AttrValue.EXTENDED));
+        assertSame(KeypadLayout.PHONE, KeypadLayout.fromAttr(7));
+    }
+}
@@ -0,0 +1,211 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PinAttemptTrackerTest {
+
+    private final List<Runnable> mPending = new ArrayList<>();
+    private File mFile;
+    private File mTempFile;
+    // The elapsed time since boot, and the wall clock the user can change
+    private long mNow = 1_000_000;
+    private long mWallNow = 5_000_000;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pinlockr", ".attempts");
+        assertTrue(mFile.delete());
+        mTempFile = new File(mFile.getPath() + ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        mTempFile.delete();
+    }
+
+    // Loaded, with the journal writes run as soon as they are queued
+    private PinAttemptTracker newTracker() {
+        return new PinAttemptTracker(mFile, 3, () -> mWallNow, () -> mNow, Runnable::run);
+    }
+
+    private PinAttemptTracker newUnloadedTracker() {
+        return new PinAttemptTracker(mFile, 3, () -> mWallNow, () -> mNow, mPending::add);
+    }
+
+    private void runPending() {
+        while (!mPending.isEmpty()) {
+            mPending.remove(0).run();
+        }
+    }
+
+    // Advances both clocks, as time passing does
+    private void advance(long millis) {
+        mNow += millis;
+        mWallNow += millis;
+    }
+
+    @Test
+    public void lockoutMillis_doublesAfterTheFreeAttempts() {
+        assertEquals(0, PinAttemptTracker.lockoutMillis(2, 3));
+        assertEquals(30_000, PinAttemptTracker.lockoutMillis(3, 3));
+        assertEquals(60_000, PinAttemptTracker.lockoutMillis(4, 3));
+        assertEquals(120_000, PinAttemptTracker.lockoutMillis(5, 3));
+        assertEquals(60 * 60_000, PinAttemptTracker.lockoutMillis(100, 3));
+    }
+
+    @Test
+    public void lockout_startsAfterTheFreeAttemptsAndExpires() {
+        PinAttemptTracker tracker = newTracker();
+        tracker.recordFailure();
+        tracker.recordFailure();
+        assertFalse(tracker.isLockedOut());
+
+        tracker.recordFailure();
+        assertTrue(tracker.isLockedOut());
+        assertEquals(30_000, tracker.remainingLockout());
+
+        advance(10_000);
+        assertEquals(20_000, tracker.remainingLockout());
+
+        advance(20_000);
+        assertFalse(tracker.isLockedOut());
+    }
+
+    @Test
+    public void lockout_isNotEndedByAClockSetForward() {
+        PinAttemptTracker tracker = newTracker();
+        for (int i = 0; i < 3; i++) {
+            tracker.recordFailure();
+        }
+
+        mWallNow += 24 * 60 * 60_000L;
+
+        assertEquals(30_000, tracker.remainingLockout());
+    }
+
+    @Test
+    public void restoredLockout_isNotExtendedByAClockSetBack() {
+        PinAttemptTracker tracker = newTracker();
+        for (int i = 0; i < 3; i++) {
+            tracker.recordFailure();
+        }
+
+        mWallNow -= 24 * 60 * 60_000L;
+
+        assertEquals(30_000, newTracker().remainingLockout());
+    }
+
+    @Test
+    public void recordSuccess_endsTheLockout() {
+        PinAttemptTracker tracker = newTracker();
+        for (int i = 0; i < 4; i++) {
+            tracker.recordFailure();
+        }
+
+        tracker.recordSuccess();
+
+        assertFalse(tracker.isLockedOut());
+        assertEquals(0, tracker.getFailedAttempts());
+    }
+
+    @Test
+    public void state_isRestoredFromTheLastRecord() {
+        PinAttemptTracker tracker = newTracker();
+        tracker.recordFailure();
+        tracker.recordSuccess();
+        for (int i = 0; i < 4; i++) {
+            tracker.recordFailure();
+        }
+        advance(10_000);
+
+        PinAttemptTracker restored = newTracker();
+
+        assertEquals(4, restored.getFailedAttempts());
+        assertEquals(50_000, restored.remainingLockout());
+        assertEquals(6L * PinAttemptTracker.RECORD_SIZE, mFile.length());
+    }
+
+    @Test
+    public void journal_isCompactedToTheLastRecord() {
+        PinAttemptTracker tracker = newTracker();
+        for (int i = 0; i < PinAttemptTracker.COMPACT_THRESHOLD; i++) {
+            tracker.recordSuccess();
+        }
+        tracker.recordFailure();
+
+        assertEquals(2L * PinAttemptTracker.RECORD_SIZE, mFile.length());
+        assertEquals(1, newTracker().getFailedAttempts());
+        assertFalse(mTempFile.exists());
+    }
+
+    @Test
+    public void failedCompaction_stillAppendsTheAttempt() {
+        PinAttemptTracker tracker = newTracker();
+        // The temporary file can't be created, so the compacted journal can't replace the old one
+        assertTrue(mTempFile.mkdir());
+        for (int i = 0; i < PinAttemptTracker.COMPACT_THRESHOLD - 1; i++) {
+            tracker.recordSuccess();
+        }
+        tracker.recordFailure();
+
+        assertEquals((long) PinAttemptTracker.COMPACT_THRESHOLD * PinAttemptTracker.RECORD_SIZE, mFile.length());
+        assertEquals(1, newTracker().getFailedAttempts());
+    }
+
+    @Test
+    public void beforeTheLoad_nothingWaitsAndAttemptsAreCountedOnTopOfTheJournal() {
+        PinAttemptTracker tracker = newTracker();
+        for (int i = 0; i < 2; i++) {
+            tracker.recordFailure();
+        }
+
+        PinAttemptTracker restored = newUnloadedTracker();
+        restored.recordFailure();
+
+        assertFalse(restored.isLoaded());
+        assertFalse(restored.isLockedOut());
+        assertEquals(0, restored.getFailedAttempts());
+
+        runPending();
+        assertTrue(restored.isLoaded());
+        assertEquals(3, restored.getFailedAttempts());
+        assertEquals(30_000, restored.remainingLockout());
+        assertEquals(3, newTracker().getFailedAttempts());
+    }
+
+    @Test
+    public void listeners_areCalledOnceTheJournalIsLoaded() {
+        PinAttemptTracker tracker = newUnloadedTracker();
+        boolean[] loaded = new boolean[1];
+        tracker.addOnLockoutChangedListener(t -> loaded[0] = t.isLoaded());
+
+        runPending();
+
+        assertTrue(loaded[0]);
+    }
+
+    @Test
+    public void listeners_areCalledOnEveryAttempt() {
+        PinAttemptTracker tracker = newTracker();
+        int[] calls = new int[1];
+        PinAttemptTracker.OnLockoutChangedListener listener = t -> calls[0]++;
+        tracker.addOnLockoutChangedListener(listener);
+
+        tracker.recordFailure();
+        tracker.recordSuccess();
+        tracker.removeOnLockoutChangedListener(listener);
+        tracker.recordFailure();
+
+        assertEquals(2, calls[0]);
+    }
+}
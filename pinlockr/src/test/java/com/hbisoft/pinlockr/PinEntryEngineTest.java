@@ -0,0 +1,182 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PinEntryEngineTest {
+
+    private PinEntryEngine mEngine;
+    private final List<int[]> mChanges = new ArrayList<>();
+    private final List<String> mCompleted = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mEngine = new PinEntryEngine(4);
+        mEngine.setListener(new PinEntryEngine.Listener() {
+            @Override
+            public void onEntryChanged(int changes, int length) {
+                mChanges.add(new int[]{changes, length});
+            }
+
+            @Override
+            public void onComplete(CharSequence pin) {
+                mCompleted.add(pin.toString());
+            }
+        });
+    }
+
+    @Test
+    public void firstDigit_reportsLengthAndInputChange() {
+        mEngine.appendDigit(7);
+
+        assertEquals(1, mChanges.size());
+        assertEquals(PinEntryEngine.CHANGED_LENGTH | PinEntryEngine.CHANGED_HAS_INPUT, mChanges.get(0)[0]);
+        assertEquals(1, mChanges.get(0)[1]);
+        assertEquals("7", mEngine.getPin().toString());
+    }
+
+    @Test
+    public void secondDigit_reportsOnlyLengthChange() {
+        mEngine.appendDigit(1);
+        mEngine.appendDigit(2);
+
+        assertEquals(PinEntryEngine.CHANGED_LENGTH, mChanges.get(1)[0]);
+        assertEquals(2, mChanges.get(1)[1]);
+    }
+
+    @Test
+    public void lastDigit_completesOnce() {
+        enter(1, 2, 3, 4);
+
+        assertEquals(1, mCompleted.size());
+        assertEquals("1234", mCompleted.get(0));
+    }
+
+    @Test
+    public void digitAfterComplete_reportsCompleteAgainWithoutAutoReset() {
+        enter(1, 2, 3, 4, 5);
+
+        assertEquals(2, mCompleted.size());
+        assertEquals("1234", mEngine.getPin().toString());
+    }
+
+    @Test
+    public void digitAfterComplete_startsNewEntryWithAutoReset() {
+        mEngine.setAutoReset(true);
+        enter(1, 2, 3, 4, 5);
+
+        assertEquals(1, mCompleted.size());
+        assertEquals("5", mEngine.getPin().toString());
+        int[] last = mChanges.get(mChanges.size() - 1);
+        assertEquals(PinEntryEngine.CHANGED_LENGTH, last[0]);
+        assertEquals(1, last[1]);
+    }
+
+    @Test
+    public void deleteLastDigit_reportsInputChange() {
+        enter(1);
+        mEngine.delete();
+
+        int[] last = mChanges.get(mChanges.size() - 1);
+        assertEquals(PinEntryEngine.CHANGED_LENGTH | PinEntryEngine.CHANGED_HAS_INPUT, last[0]);
+        assertEquals(0, last[1]);
+    }
+
+    @Test
+    public void deleteWhenEmpty_reportsNothing() {
+        mEngine.delete();
+        mEngine.reset();
+
+        assertTrue(mChanges.isEmpty());
+    }
+
+    @Test
+    public void reset_wipesBuffer() {
+        enter(9, 8);
+        mEngine.reset();
+
+        assertEquals(0, mEngine.length());
+        assertEquals("", mEngine.getPin().toString());
+        assertEquals(PinEntryEngine.CHANGED_LENGTH | PinEntryEngine.CHANGED_HAS_INPUT, mChanges.get(mChanges.size() - 1)[0]);
+    }
+
+    @Test
+    public void setPinLength_wipesAndResizes() {
+        enter(1, 2);
+        mEngine.setPinLength(6);
+
+        assertEquals(6, mEngine.getPinLength());
+        assertEquals(0, mEngine.length());
+        enter(1, 2, 3, 4, 5, 6);
+        assertEquals("123456", mCompleted.get(0));
+    }
+
+    @Test
+    public void submit_reportsOnlyCompletePin() {
+        enter(1, 2, 3);
+        assertFalse(mEngine.submit());
+        assertTrue(mCompleted.isEmpty());
+
+        enter(4);
+        assertTrue(mEngine.submit());
+        assertEquals(2, mCompleted.size());
+        assertEquals("1234", mCompleted.get(1));
+    }
+
+    @Test
+    public void savedEntry_isRestoredWithoutCompleting() {
+        enter(4, 0, 9, 6);
+        byte[] saved = mEngine.saveEntry();
+        mEngine.reset();
+        mCompleted.clear();
+
+        assertTrue(mEngine.restoreEntry(saved));
+        assertEquals("4096", mEngine.getPin().toString());
+        assertTrue(mCompleted.isEmpty());
+        // The saved state is wiped once it's used
+        assertFalse(mEngine.restoreEntry(saved));
+        assertEquals(0, mEngine.length());
+    }
+
+    @Test
+    public void savedEntry_doesNotHoldThePlainDigits() {
+        enter(1, 1, 1);
+        byte[] saved = mEngine.saveEntry();
+
+        // The pad would have to be the same for every digit, 1 in 2^24
+        assertFalse(saved[saved.length - 1] == 1 && saved[saved.length - 2] == 1 && saved[saved.length - 3] == 1);
+    }
+
+    @Test
+    public void tamperedOrForeignEntry_isDropped() {
+        enter(1, 2);
+        byte[] saved = mEngine.saveEntry();
+        // A different pad id, as if saved by another process
+        saved[0] ^= 1;
+
+        assertFalse(mEngine.restoreEntry(saved));
+        assertEquals(0, mEngine.length());
+        assertNull(mEngine.saveEntry());
+    }
+
+    @Test
+    public void savedEntry_longerThanThePin_isDropped() {
+        enter(1, 2, 3);
+        byte[] saved = mEngine.saveEntry();
+        mEngine.setPinLength(2);
+
+        assertFalse(mEngine.restoreEntry(saved));
+        assertEquals(0, mEngine.length());
+    }
+
+    private void enter(int... digits) {
+        for (int digit : digits) {
+            mEngine.appendDigit(digit);
+        }
+    }
+}
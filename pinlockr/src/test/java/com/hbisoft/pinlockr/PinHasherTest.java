@@ -0,0 +1,102 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PinHasherTest {
+
+    private final PinHasher mHasher = new PinHasher(1000);
+
+    @Test
+    public void verify_matchesTheHashedPin() {
+        byte[] verifier = mHasher.hash("1234".toCharArray());
+
+        assertTrue(mHasher.verify("1234".toCharArray(), verifier));
+        assertFalse(mHasher.verify("1235".toCharArray(), verifier));
+    }
+
+    @Test
+    public void hash_usesANewSaltEveryTime() {
+        byte[] first = mHasher.hash("1234".toCharArray());
+        byte[] second = mHasher.hash("1234".toCharArray());
+
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void verify_rejectsMalformedVerifiers() {
+        byte[] verifier = mHasher.hash("1234".toCharArray());
+        byte[] truncated = Arrays.copyOf(verifier, verifier.length - 1);
+        verifier[0] = 42;
+
+        assertFalse(mHasher.verify("1234".toCharArray(), verifier));
+        assertFalse(mHasher.verify("1234".toCharArray(), truncated));
+        assertFalse(mHasher.verify("1234".toCharArray(), null));
+    }
+
+    @Test
+    public void verify_rejectsVerifiersWithFarTooManyIterations() {
+        byte[] verifier = new PinHasher(1000 * PinHasher.MAX_ITERATION_FACTOR).hash("1234".toCharArray());
+        byte[] slower = new PinHasher(1000 * PinHasher.MAX_ITERATION_FACTOR + 1).hash("1234".toCharArray());
+
+        assertTrue(mHasher.verify("1234".toCharArray(), verifier));
+        assertFalse(mHasher.verify("1234".toCharArray(), slower));
+    }
+
+    @Test
+    public void needsRehash_whenTheIterationCountGrew() {
+        byte[] verifier = mHasher.hash("1234".toCharArray());
+
+        assertFalse(mHasher.needsRehash(verifier));
+        assertTrue(new PinHasher(2000).needsRehash(verifier));
+    }
+
+    @Test
+    public void calibration_isPersistedAndReused() throws IOException {
+        File file = File.createTempFile("pinlockr", ".kdf");
+        assertTrue(file.delete());
+        try {
+            int iterations = new PinHasher(file, 1).getIterations();
+
+            assertEquals(PinHasher.MIN_ITERATIONS, iterations);
+            assertTrue(file.exists());
+            assertEquals(iterations, new PinHasher(file, 1).getIterations());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void hash_reportsOnTheCallbackExecutor() throws InterruptedException {
+        PinBuffer pin = new PinBuffer(4);
+        pin.append(1);
+        pin.append(2);
+        AtomicReference<byte[]> verifier = new AtomicReference<>();
+        AtomicReference<Boolean> matches = new AtomicReference<>();
+        CountDownLatch hashed = new CountDownLatch(1);
+        CountDownLatch verified = new CountDownLatch(1);
+
+        mHasher.hash(pin, Runnable::run, result -> {
+            verifier.set(result);
+            hashed.countDown();
+        });
+        // The digits are copied up front, so wiping the buffer doesn't affect the hash
+        pin.clear();
+        assertTrue(hashed.await(10, TimeUnit.SECONDS));
+
+        mHasher.verify("12", verifier.get(), Runnable::run, result -> {
+            matches.set(result);
+            verified.countDown();
+        });
+        assertTrue(verified.await(10, TimeUnit.SECONDS));
+        assertTrue(matches.get());
+    }
+}
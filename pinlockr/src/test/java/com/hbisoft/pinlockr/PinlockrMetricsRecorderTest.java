@@ -0,0 +1,88 @@
+package com.hbisoft.pinlockr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PinlockrMetricsRecorderTest {
+
+    @Test
+    public void percentiles_useTheNearestRank() {
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(100);
+        // Out of order, so the percentiles have to sort
+        for (int i = 100; i >= 1; i--) {
+            recorder.onMetric(PinlockrMetrics.INPUT_LATENCY, i);
+        }
+
+        assertEquals(50, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 50));
+        assertEquals(95, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 95));
+        assertEquals(99, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 99));
+        assertEquals(100, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 100));
+    }
+
+    @Test
+    public void percentiles_ofFewSamples_roundTheRankUp() {
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(10);
+        recorder.onMetric(PinlockrMetrics.BIND_COST, 10);
+        recorder.onMetric(PinlockrMetrics.BIND_COST, 20);
+        recorder.onMetric(PinlockrMetrics.BIND_COST, 30);
+
+        assertEquals(20, recorder.getPercentile(PinlockrMetrics.BIND_COST, 50));
+        assertEquals(30, recorder.getPercentile(PinlockrMetrics.BIND_COST, 95));
+        assertEquals(10, recorder.getPercentile(PinlockrMetrics.BIND_COST, 1));
+    }
+
+    @Test
+    public void samplesPastTheCapacity_replaceTheOldestOnes() {
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(4);
+        for (int i = 1; i <= 10; i++) {
+            recorder.onMetric(PinlockrMetrics.LAYOUT_COST, i * 100);
+        }
+
+        // Only 700, 800, 900 and 1000 are left
+        assertEquals(4, recorder.getCount(PinlockrMetrics.LAYOUT_COST));
+        assertEquals(700, recorder.getPercentile(PinlockrMetrics.LAYOUT_COST, 25));
+        assertEquals(800, recorder.getPercentile(PinlockrMetrics.LAYOUT_COST, 50));
+        assertEquals(1000, recorder.getPercentile(PinlockrMetrics.LAYOUT_COST, 99));
+    }
+
+    @Test
+    public void metrics_areKeptApart() {
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(4);
+        recorder.onMetric(PinlockrMetrics.CALLBACK_LATENCY, 5);
+
+        assertEquals(1, recorder.getCount(PinlockrMetrics.CALLBACK_LATENCY));
+        assertEquals(0, recorder.getCount(PinlockrMetrics.CALLBACK_DISPATCH));
+        assertEquals(-1, recorder.getPercentile(PinlockrMetrics.CALLBACK_DISPATCH, 50));
+    }
+
+    @Test
+    public void reset_dropsEverySample() {
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(4);
+        for (int i = 1; i <= 6; i++) {
+            recorder.onMetric(PinlockrMetrics.INPUT_LATENCY, i);
+        }
+
+        recorder.reset();
+
+        assertEquals(0, recorder.getCount(PinlockrMetrics.INPUT_LATENCY));
+        assertEquals(-1, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 50));
+        recorder.onMetric(PinlockrMetrics.INPUT_LATENCY, 42);
+        assertEquals(42, recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 99));
+    }
+
+    @Test
+    public void invalidArguments_areRejected() {
+        try {
+            new PinlockrMetricsRecorder(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        PinlockrMetricsRecorder recorder = new PinlockrMetricsRecorder(4);
+        try {
+            recorder.getPercentile(PinlockrMetrics.INPUT_LATENCY, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}